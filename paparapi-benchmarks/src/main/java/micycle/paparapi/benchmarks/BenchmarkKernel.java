@@ -0,0 +1,91 @@
+package micycle.paparapi.benchmarks;
+
+import micycle.paparapi.PKernel;
+import micycle.paparapi.PixelTarget;
+
+/**
+ * A representative procedural-texture kernel (noise, random and color packing
+ * per pixel) that also exposes <code>PKernel</code>'s protected helpers to the
+ * benchmarks.
+ *
+ * @author Michael Carleton
+ *
+ */
+public class BenchmarkKernel extends PKernel {
+
+	protected float time;
+
+	public BenchmarkKernel(PixelTarget target) {
+		super(target);
+	}
+
+	/**
+	 * Creates a kernel with <code>kernelSize</code> elements of xorshift state,
+	 * for benchmarking the deprecated {@link #randomHash(int)}.
+	 */
+	public BenchmarkKernel(PixelTarget target, int kernelSize) {
+		super(target, kernelSize);
+	}
+
+	/**
+	 * Creates a headless kernel of the given size.
+	 */
+	public static BenchmarkKernel create(int width, int height) {
+		return new BenchmarkKernel(PixelTarget.of(new int[width * height], width, height));
+	}
+
+	/**
+	 * Creates a kernel for a resolution of the form <code>1920x1080</code>.
+	 */
+	public static BenchmarkKernel create(String resolution) {
+		int[] size = parseResolution(resolution);
+		return create(size[0], size[1]);
+	}
+
+	/**
+	 * Parses a resolution of the form <code>1920x1080</code> into
+	 * <code>{width, height}</code>.
+	 */
+	public static int[] parseResolution(String resolution) {
+		String[] wh = resolution.split("x");
+		return new int[] { Integer.parseInt(wh[0]), Integer.parseInt(wh[1]) };
+	}
+
+	@Override
+	public void run() {
+		int x = pixelX();
+		int y = pixelY();
+		float n = noise(x * 0.01f, y * 0.01f, time);
+		float r = randomFloat(pixelIndex(), 0);
+		pixels[pixelIndex()] = composeColor(n * 0.5f + 0.5f, r, 0.5f, 1);
+	}
+
+	public float noise2(float x, float y) {
+		return noise(x, y);
+	}
+
+	public float noise3(float x, float y, float z) {
+		return noise(x, y, z);
+	}
+
+	public float random(int id) {
+		return randomFloat(id, 0);
+	}
+
+	public int randomBits(int id) {
+		return randomInt(id, 0);
+	}
+
+	@SuppressWarnings("deprecation") // benchmarked against its replacement, randomFloat()
+	public float xorshift(int gid) {
+		return randomHash(gid);
+	}
+
+	public int color(int r, int g, int b) {
+		return composeColor(r, g, b);
+	}
+
+	public int color(float r, float g, float b, float a) {
+		return composeColor(r, g, b, a);
+	}
+}
@@ -0,0 +1,34 @@
+package micycle.paparapi.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of <code>benchmarks.jar</code>: runs JMH with the given arguments,
+ * writing results as JSON to <code>jmh-result.json</code> unless a result
+ * format or file is given explicitly (<code>-rf</code> / <code>-rff</code>).
+ *
+ * @author Michael Carleton
+ *
+ */
+public final class BenchmarkMain {
+
+	private BenchmarkMain() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+		if (!jmhArgs.contains("-rf")) {
+			jmhArgs.add("-rf");
+			jmhArgs.add("json");
+		}
+		if (!jmhArgs.contains("-rff")) {
+			jmhArgs.add("-rff");
+			jmhArgs.add("jmh-result.json");
+		}
+		Main.main(jmhArgs.toArray(new String[0]));
+	}
+}
@@ -0,0 +1,46 @@
+package micycle.paparapi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of presenting a frame via <code>dump()</code> at common sketch
+ * resolutions.
+ *
+ * @author Michael Carleton
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DumpBenchmark {
+
+	@Param({ "1280x720", "1920x1080", "3840x2160" })
+	public String resolution;
+
+	private BenchmarkKernel kernel;
+
+	@Setup
+	public void setup() {
+		kernel = BenchmarkKernel.create(resolution);
+	}
+
+	@Benchmark
+	public void dump() {
+		kernel.dump();
+	}
+}
@@ -0,0 +1,65 @@
+package micycle.paparapi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aparapi.Range;
+
+/**
+ * Whole-kernel execution of {@link BenchmarkKernel} on the CPU execution modes
+ * at 720p, 1080p and 4K.
+ *
+ * @author Michael Carleton
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecuteBenchmark {
+
+	@Param({ "SEQ", "JTP" })
+	public String mode;
+
+	@Param({ "1280x720", "1920x1080", "3840x2160" })
+	public String resolution;
+
+	private BenchmarkKernel kernel;
+	private Range range;
+
+	@SuppressWarnings("deprecation")
+	@Setup
+	public void setup() {
+		int[] size = BenchmarkKernel.parseResolution(resolution);
+		kernel = BenchmarkKernel.create(size[0], size[1]);
+		// qualified rather than imported: a deprecated import can't be suppressed
+		com.aparapi.Kernel.EXECUTION_MODE executionMode = com.aparapi.Kernel.EXECUTION_MODE.valueOf(mode);
+		kernel.setExecutionMode(executionMode);
+		// sequential execution requires single-item work groups
+		range = executionMode == com.aparapi.Kernel.EXECUTION_MODE.SEQ ? Range.create2D(size[0], size[1], 1, 1) : Range.create2D(size[0], size[1]);
+	}
+
+	@TearDown
+	public void tearDown() {
+		kernel.dispose();
+	}
+
+	@Benchmark
+	public void execute() {
+		kernel.execute(range);
+	}
+}
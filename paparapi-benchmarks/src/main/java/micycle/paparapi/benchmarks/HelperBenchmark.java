@@ -0,0 +1,89 @@
+package micycle.paparapi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import micycle.paparapi.PixelTarget;
+
+/**
+ * Per-call cost of the scalar helpers that kernels call per work item.
+ *
+ * @author Michael Carleton
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HelperBenchmark {
+
+	private static final int RANDOM_STATES = 1 << 16;
+
+	private BenchmarkKernel kernel;
+	private BenchmarkKernel xorshiftKernel; // with the random state randomHash() needs
+	private float x, y, z;
+	private int gid;
+
+	@Setup
+	public void setup() {
+		kernel = BenchmarkKernel.create(256, 256);
+		xorshiftKernel = new BenchmarkKernel(PixelTarget.of(new int[RANDOM_STATES], 256, RANDOM_STATES / 256), RANDOM_STATES);
+	}
+
+	@Benchmark
+	public float noise2D() {
+		x += 0.0137f;
+		y += 0.0071f;
+		return kernel.noise2(x, y);
+	}
+
+	@Benchmark
+	public float noise3D() {
+		x += 0.0137f;
+		y += 0.0071f;
+		z += 0.0031f;
+		return kernel.noise3(x, y, z);
+	}
+
+	@Benchmark
+	public float randomHash() {
+		gid = (gid + 1) & (RANDOM_STATES - 1);
+		return xorshiftKernel.xorshift(gid);
+	}
+
+	@Benchmark
+	public float randomFloat() {
+		gid++;
+		return kernel.random(gid);
+	}
+
+	@Benchmark
+	public int randomInt() {
+		gid++;
+		return kernel.randomBits(gid);
+	}
+
+	@Benchmark
+	public int composeColorInt() {
+		gid++;
+		return kernel.color(gid & 255, (gid >> 8) & 255, (gid >> 16) & 255);
+	}
+
+	@Benchmark
+	public int composeColorFloat() {
+		x += 0.0137f;
+		return kernel.color(x - (int) x, 0.5f, 0.25f, 1);
+	}
+}
@@ -0,0 +1,95 @@
+package micycle.paparapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Persists the backends chosen by {@link Calibrator}s to a properties file,
+ * keyed by <code>kernelClass@rangeSize</code>, so that later launches start in
+ * the right backend immediately.
+ * <p>
+ * The file is <code>~/.paparapi/calibration.properties</code> unless the
+ * <code>paparapi.calibration</code> system property names another. I/O
+ * failures are not fatal: decisions are then kept for the current JVM only.
+ *
+ * @author Michael Carleton
+ *
+ */
+final class CalibrationStore {
+
+	static final String FILE_PROPERTY = "paparapi.calibration";
+
+	private static Properties decisions;
+
+	private CalibrationStore() {
+	}
+
+	static synchronized String get(String key) {
+		if (decisions == null) {
+			decisions = load(file());
+		}
+		return decisions.getProperty(key);
+	}
+
+	static synchronized void put(String key, String value) {
+		Path file = file();
+		Properties merged = load(file); // keep decisions made by other processes meanwhile
+		merged.setProperty(key, value);
+		decisions = merged;
+		Path temp = null;
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			temp = Files.createTempFile(file.toAbsolutePath().getParent(), "calibration", ".tmp");
+			try (OutputStream out = Files.newOutputStream(temp)) {
+				merged.store(out, "Paparapi backend calibration (kernelClass@rangeSize=backend)");
+			}
+			try {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			temp = null; // moved into place
+		} catch (IOException | SecurityException e) {
+			// not persisted; the decision still holds in memory
+		} finally {
+			if (temp != null) {
+				deleteQuietly(temp);
+			}
+		}
+	}
+
+	private static void deleteQuietly(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException | SecurityException e) {
+			// left behind; harmless beside the calibration file
+		}
+	}
+
+	private static Path file() {
+		String path = System.getProperty(FILE_PROPERTY);
+		if (path != null) {
+			return Paths.get(path);
+		}
+		return Paths.get(System.getProperty("user.home"), ".paparapi", "calibration.properties");
+	}
+
+	private static Properties load(Path file) {
+		Properties properties = new Properties();
+		if (Files.isRegularFile(file)) {
+			try (InputStream in = Files.newInputStream(file)) {
+				properties.load(in);
+			} catch (IOException | SecurityException | IllegalArgumentException e) {
+				// unreadable or malformed: calibrate afresh
+			}
+		}
+		return properties;
+	}
+}
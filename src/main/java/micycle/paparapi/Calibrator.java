@@ -0,0 +1,134 @@
+package micycle.paparapi;
+
+import java.util.List;
+
+import com.aparapi.Range;
+
+/**
+ * Chooses the fastest {@link PKernel.Backend} for a kernel by trial (see
+ * {@link PKernel#calibrate(int)}).
+ * <p>
+ * For each range size a kernel executes over, each available backend in turn
+ * executes one untimed warm-up frame (absorbing bytecode conversion and JIT
+ * compilation) and then a number of timed frames; the backend with the lowest
+ * mean frame time is locked in and {@link CalibrationStore persisted}. A range
+ * size with a persisted decision is locked in immediately. Backends that fail,
+ * or that Aparapi silently falls back from, are disqualified.
+ *
+ * @author Michael Carleton
+ *
+ */
+final class Calibrator {
+
+	private final String kernelClass;
+	private final int framesPerBackend;
+	private final List<PKernel.Backend> candidates;
+	private final long[] totalNanos;
+	private final boolean[] disqualified;
+
+	private String rangeKey;
+	private PKernel.Backend locked;
+	private int candidate; // index of the backend on trial
+	private int frames; // frames executed by the backend on trial, including warm-up
+
+	/**
+	 * @param candidates available backends, at least one
+	 */
+	Calibrator(Class<?> kernelClass, int framesPerBackend, List<PKernel.Backend> candidates) {
+		this.kernelClass = kernelClass.getName();
+		this.framesPerBackend = framesPerBackend;
+		this.candidates = candidates;
+		totalNanos = new long[candidates.size()];
+		disqualified = new boolean[candidates.size()];
+	}
+
+	/**
+	 * @return the backend to execute the given range on: the locked-in backend
+	 *         for its size, or else the one on trial
+	 */
+	PKernel.Backend select(Range range) {
+		String key = range.getGlobalSize(0) + "x" + range.getGlobalSize(1) + (range.getDims() == 3 ? "x" + range.getGlobalSize(2) : "");
+		if (!key.equals(rangeKey)) {
+			rangeKey = key;
+			restart();
+		}
+		return locked != null ? locked : candidates.get(candidate);
+	}
+
+	/**
+	 * Records the frame time of an execution on the backend last selected.
+	 *
+	 * @param ranAsSelected whether the execution actually ran on that backend
+	 *                      (rather than a fallback)
+	 */
+	void record(long nanos, boolean ranAsSelected) {
+		if (locked != null) {
+			return;
+		}
+		if (!ranAsSelected) {
+			disqualify();
+			return;
+		}
+		if (frames++ > 0) {
+			totalNanos[candidate] += nanos;
+		}
+		if (frames > framesPerBackend) {
+			next();
+		}
+	}
+
+	/**
+	 * Disqualifies the backend on trial, e.g. after it failed to execute.
+	 */
+	void disqualify() {
+		if (locked == null) {
+			disqualified[candidate] = true;
+			next();
+		}
+	}
+
+	/**
+	 * @return the locked-in backend for the current range size;
+	 *         <code>null</code> while still on trial
+	 */
+	PKernel.Backend getLocked() {
+		return locked;
+	}
+
+	private void restart() {
+		locked = null;
+		candidate = 0;
+		frames = 0;
+		for (int i = 0; i < totalNanos.length; i++) {
+			totalNanos[i] = 0;
+			disqualified[i] = false;
+		}
+		String decision = CalibrationStore.get(kernelClass + "@" + rangeKey);
+		if (decision != null) {
+			for (PKernel.Backend backend : candidates) {
+				if (backend.name().equals(decision)) {
+					locked = backend; // otherwise no longer available: trial afresh
+				}
+			}
+		}
+	}
+
+	private void next() {
+		frames = 0;
+		if (++candidate < candidates.size()) {
+			return;
+		}
+		int best = -1;
+		for (int i = 0; i < candidates.size(); i++) {
+			if (!disqualified[i] && (best < 0 || totalNanos[i] < totalNanos[best])) {
+				best = i; // every qualified backend timed the same number of frames
+			}
+		}
+		if (best < 0) {
+			locked = PKernel.Backend.JTP; // nothing qualified; Aparapi's default
+			return; // and don't persist
+		}
+		locked = candidates.get(best);
+		CalibrationStore.put(kernelClass + "@" + rangeKey, locked.name());
+	}
+}
@@ -0,0 +1,257 @@
+package micycle.paparapi;
+
+import java.util.List;
+
+import com.aparapi.Kernel;
+import com.aparapi.ProfileInfo;
+import com.aparapi.Range;
+import com.aparapi.device.Device;
+import com.aparapi.device.OpenCLDevice;
+
+/**
+ * An immutable breakdown of where the time of a single {@link PKernel}
+ * execution went: bytecode conversion, transfers to the device, compute and
+ * transfers back to the host.
+ * <p>
+ * When running on OpenCL with Aparapi's profiling enabled
+ * (<code>-Dcom.aparapi.enableProfiling=true</code>), transfer and compute times
+ * come from the device's own profiling events. Otherwise they are derived from
+ * host timers: Java execution modes (JTP, SEQ) perform no transfers, while an
+ * unprofiled OpenCL execution reports its transfers as part of compute (see
+ * {@link #isDeviceProfiled()}). Reading pixels back lazily (after the execution
+ * itself) is host-timed and counted as transfer-out.
+ * <p>
+ * Executions on the {@link PKernel.Engine#FORK_JOIN fork/join engine} report
+ * their device type as JTP (they run on a Java thread pool) and additionally
+ * how many chunks the range was split into and how many of those were stolen.
+ *
+ * @author Michael Carleton
+ *
+ */
+public final class ExecutionProfile {
+
+	private final PKernel.Engine engine;
+	private final Device.TYPE deviceType;
+	private final int globalSize;
+	private final int passes;
+	private final boolean deviceProfiled;
+	private final double conversionMillis;
+	private final double transferInMillis;
+	private final double computeMillis;
+	private final double transferOutMillis;
+	private final double totalMillis;
+	private final int chunks;
+	private final int stolenChunks;
+
+	private ExecutionProfile(PKernel.Engine engine, Device.TYPE deviceType, int globalSize, int passes, boolean deviceProfiled,
+			double conversionMillis, double transferInMillis, double computeMillis, double transferOutMillis, double totalMillis, int chunks,
+			int stolenChunks) {
+		this.engine = engine;
+		this.deviceType = deviceType;
+		this.globalSize = globalSize;
+		this.passes = passes;
+		this.deviceProfiled = deviceProfiled;
+		this.conversionMillis = conversionMillis;
+		this.transferInMillis = transferInMillis;
+		this.computeMillis = computeMillis;
+		this.transferOutMillis = transferOutMillis;
+		this.totalMillis = totalMillis;
+		this.chunks = chunks;
+		this.stolenChunks = stolenChunks;
+	}
+
+	/**
+	 * Captures the profile of the execution that the given kernel has just
+	 * completed.
+	 *
+	 * @param kernel    the kernel, immediately after its execution
+	 * @param range     the range it executed over
+	 * @param passes    the number of passes it executed
+	 * @param wallNanos host wall-clock duration of the execution
+	 */
+	static ExecutionProfile capture(Kernel kernel, Range range, int passes, long wallNanos) {
+		Device.TYPE type = deviceType(kernel, range);
+		int globalSize = globalSize(range);
+		double total = wallNanos / 1e6;
+		double conversion = kernel.getConversionTime();
+
+		List<ProfileInfo> events = kernel.isRunningCL() ? kernel.getProfileInfo() : null;
+		if (events != null && !events.isEmpty()) {
+			long write = 0, exec = 0, read = 0;
+			for (ProfileInfo event : events) {
+				long span = event.getEnd() - event.getStart();
+				switch (String.valueOf((Object) event.getType())) { // ProfileInfo.TYPE isn't public
+					case "W":
+						write += span;
+						break;
+					case "X":
+						exec += span;
+						break;
+					case "R":
+						read += span;
+						break;
+				}
+			}
+			return new ExecutionProfile(PKernel.Engine.APARAPI, type, globalSize, passes, true, conversion, write / 1e6, exec / 1e6,
+					read / 1e6, total, 0, 0);
+		}
+		double compute = Math.max(0, kernel.getExecutionTime() - conversion);
+		return new ExecutionProfile(PKernel.Engine.APARAPI, type, globalSize, passes, false, conversion, 0, compute, 0, total, 0, 0);
+	}
+
+	/**
+	 * Creates the profile of an execution on the fork/join engine, which is all
+	 * compute.
+	 *
+	 * @param range        the range it executed over
+	 * @param passes       the number of passes it executed
+	 * @param wallNanos    host wall-clock duration of the execution
+	 * @param chunks       number of chunks executed
+	 * @param stolenChunks number of those chunks that were stolen
+	 */
+	static ExecutionProfile forkJoin(Range range, int passes, long wallNanos, int chunks, int stolenChunks) {
+		double total = wallNanos / 1e6;
+		return new ExecutionProfile(PKernel.Engine.FORK_JOIN, Device.TYPE.JTP, globalSize(range), passes, false, 0, 0, total, 0, total,
+				chunks, stolenChunks);
+	}
+
+	/**
+	 * Determines the type of device that actually executed: the kernel's target
+	 * device is only Aparapi's preference, which a device bound to the range or a
+	 * (legacy) execution mode overrides.
+	 */
+	@SuppressWarnings("deprecation")
+	private static Device.TYPE deviceType(Kernel kernel, Range range) {
+		Device device = range.getDevice() != null ? range.getDevice() : kernel.getTargetDevice();
+		if (kernel.isRunningCL()) {
+			return device == null ? Device.TYPE.UNKNOWN : device.getType();
+		}
+		switch (kernel.getExecutionMode()) {
+			case SEQ:
+				return Device.TYPE.SEQ;
+			case JTP:
+				return Device.TYPE.JTP;
+			default:
+				if (device == null || device instanceof OpenCLDevice) {
+					return Device.TYPE.JTP; // Aparapi's fallback from OpenCL
+				}
+				return device.getType();
+		}
+	}
+
+	private static int globalSize(Range range) {
+		return range.getGlobalSize(0) * range.getGlobalSize(1) * range.getGlobalSize(2);
+	}
+
+	/**
+	 * Returns a copy of this profile with a host-timed read-back added to its
+	 * transfer-out (and total) time.
+	 */
+	ExecutionProfile withReadback(long readbackNanos) {
+		double readback = readbackNanos / 1e6;
+		return new ExecutionProfile(engine, deviceType, globalSize, passes, deviceProfiled, conversionMillis, transferInMillis,
+				computeMillis, transferOutMillis + readback, totalMillis + readback, chunks, stolenChunks);
+	}
+
+	/**
+	 * @return the engine that ran the execution
+	 */
+	public PKernel.Engine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @return the type of device the execution actually ran on (e.g. GPU, JTP,
+	 *         SEQ), after any fallback
+	 */
+	public Device.TYPE getDeviceType() {
+		return deviceType;
+	}
+
+	/**
+	 * @return the total number of work items executed per pass
+	 */
+	public int getGlobalSize() {
+		return globalSize;
+	}
+
+	/**
+	 * @return the number of passes executed
+	 */
+	public int getPasses() {
+		return passes;
+	}
+
+	/**
+	 * @return whether transfer and compute times come from OpenCL profiling
+	 *         events (rather than host timers)
+	 */
+	public boolean isDeviceProfiled() {
+		return deviceProfiled;
+	}
+
+	/**
+	 * @return time spent preparing the execution, including bytecode analysis and
+	 *         OpenCL conversion, in milliseconds
+	 */
+	public double getConversionMillis() {
+		return conversionMillis;
+	}
+
+	/**
+	 * @return time spent transferring buffers to the device, in milliseconds
+	 */
+	public double getTransferInMillis() {
+		return transferInMillis;
+	}
+
+	/**
+	 * @return time spent executing the kernel itself, in milliseconds
+	 */
+	public double getComputeMillis() {
+		return computeMillis;
+	}
+
+	/**
+	 * @return time spent transferring buffers back to the host, in milliseconds
+	 */
+	public double getTransferOutMillis() {
+		return transferOutMillis;
+	}
+
+	/**
+	 * @return host wall-clock time of the execution (plus any lazy read-back), in
+	 *         milliseconds
+	 */
+	public double getTotalMillis() {
+		return totalMillis;
+	}
+
+	/**
+	 * @return number of chunks a fork/join execution split its range into (over
+	 *         all passes); 0 for Aparapi executions
+	 */
+	public int getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * @return number of chunks of a fork/join execution that were stolen by an
+	 *         idle worker, directly or as part of a larger task it split up
+	 *         (rather than run by the worker that split them off); at most
+	 *         {@link #getChunks()}, and 0 for Aparapi executions
+	 */
+	public int getStolenChunks() {
+		return stolenChunks;
+	}
+
+	@Override
+	public String toString() {
+		if (engine == PKernel.Engine.FORK_JOIN) {
+			return String.format("%s[%d x %d] total=%.3fms chunks=%d stolen=%d", engine, globalSize, passes, totalMillis, chunks,
+					stolenChunks);
+		}
+		return String.format("%s[%d x %d] conversion=%.3fms in=%.3fms compute=%.3fms out=%.3fms total=%.3fms%s", deviceType, globalSize,
+				passes, conversionMillis, transferInMillis, computeMillis, transferOutMillis, totalMillis, deviceProfiled ? "" : " (host-timed)");
+	}
+}
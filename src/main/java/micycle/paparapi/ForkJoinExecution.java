@@ -0,0 +1,150 @@
+package micycle.paparapi;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.aparapi.Kernel;
+import com.aparapi.Range;
+
+/**
+ * Executes a kernel's <code>run()</code> method over a range on a
+ * {@link ForkJoinPool} (see {@link PKernel.Engine#FORK_JOIN}).
+ * <p>
+ * The range's work items are taken in row-major order and split in halves
+ * until either a chunk is small enough or the executing worker already has
+ * surplus queued work; idle workers steal the larger, earlier-forked halves.
+ * Unlike Aparapi's JTP mode, which assigns equal shares of the range to a
+ * fixed set of threads, this keeps every core busy when the cost of work items
+ * varies widely (fractals, raymarchers, etc.).
+ * <p>
+ * Each chunk runs on its own shallow {@link Kernel#clone() clone} of the
+ * kernel, whose global, local and group ids and pass id are set before each
+ * call to <code>run()</code>. Local barriers and local memory are not
+ * supported: work groups are not executed as units.
+ *
+ * @author Michael Carleton
+ *
+ */
+final class ForkJoinExecution {
+
+	private static final int MIN_GRAIN = 64; // work items
+	private static final int CHUNKS_PER_WORKER = 16; // granularity target when the pool is idle
+	private static final int MAX_SURPLUS = 2; // queued tasks beyond which a worker stops splitting
+
+	private final Kernel kernel;
+	private final Range range;
+	private final int globalX, globalY;
+	private final int items;
+	private final int grain;
+	private final AtomicInteger chunks = new AtomicInteger();
+	private final AtomicInteger stolenChunks = new AtomicInteger();
+	private int passId;
+
+	private ForkJoinExecution(Kernel kernel, Range range, ForkJoinPool pool) {
+		this.kernel = kernel;
+		this.range = range;
+		globalX = range.getGlobalSize(0);
+		globalY = range.getGlobalSize(1);
+		items = globalX * globalY * range.getGlobalSize(2);
+		grain = Math.max(MIN_GRAIN, items / (pool.getParallelism() * CHUNKS_PER_WORKER));
+	}
+
+	/**
+	 * Executes <code>passes</code> passes of the kernel over the range, one after
+	 * another, blocking until all have completed.
+	 *
+	 * @return the execution, for its chunk statistics
+	 */
+	static ForkJoinExecution execute(Kernel kernel, Range range, int passes, ForkJoinPool pool) {
+		ForkJoinExecution execution = new ForkJoinExecution(kernel, range, pool);
+		for (int pass = 0; pass < passes; pass++) {
+			execution.passId = pass;
+			pool.invoke(execution.new Chunk(0, execution.items, null, false));
+		}
+		return execution;
+	}
+
+	/**
+	 * @return number of chunks executed, over all passes
+	 */
+	int getChunks() {
+		return chunks.get();
+	}
+
+	/**
+	 * @return number of chunks executed by a worker other than the one that
+	 *         forked them (or forked the task they were split from), over all
+	 *         passes; at most {@link #getChunks()}
+	 */
+	int getStolenChunks() {
+		return stolenChunks.get();
+	}
+
+	private void runItems(int from, int to) {
+		Kernel k = kernel.clone();
+		Kernel.KernelState state = k.getKernelState();
+		state.setRange(range);
+		state.setPassId(passId);
+
+		int x = from % globalX;
+		int y = (from / globalX) % globalY;
+		int z = from / globalX / globalY;
+		setIds(state, 1, y);
+		setIds(state, 2, z);
+		for (int i = from; i < to; i++) {
+			setIds(state, 0, x);
+			k.run();
+			if (++x == globalX) {
+				x = 0;
+				if (++y == globalY) {
+					y = 0;
+					setIds(state, 2, ++z);
+				}
+				setIds(state, 1, y);
+			}
+		}
+	}
+
+	private void setIds(Kernel.KernelState state, int dim, int id) {
+		int localSize = range.getLocalSize(dim);
+		state.setGlobalId(dim, id);
+		state.setLocalId(dim, id % localSize);
+		state.setGroupId(dim, id / localSize);
+	}
+
+	private final class Chunk extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to;
+		private final Thread forker; // null for the root chunk
+		private final boolean stolen; // whether a task this one was split from was stolen
+
+		Chunk(int from, int to, Thread forker, boolean stolen) {
+			this.from = from;
+			this.to = to;
+			this.forker = forker;
+			this.stolen = stolen;
+		}
+
+		@Override
+		protected void compute() {
+			Thread current = Thread.currentThread();
+			boolean stolen = this.stolen || (forker != null && forker != current);
+			if (to - from > grain && getSurplusQueuedTaskCount() <= MAX_SURPLUS) {
+				int mid = (from + to) >>> 1;
+				Chunk right = new Chunk(mid, to, current, stolen);
+				right.fork();
+				new Chunk(from, mid, current, stolen).compute();
+				right.join();
+			} else {
+				chunks.incrementAndGet();
+				if (stolen) {
+					stolenChunks.incrementAndGet();
+				}
+				runItems(from, to);
+			}
+		}
+	}
+}
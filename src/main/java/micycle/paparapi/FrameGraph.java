@@ -0,0 +1,525 @@
+package micycle.paparapi;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.aparapi.Kernel;
+
+/**
+ * Chains {@link PKernel}s (e.g. simulation, blur, tone-map, composite) through
+ * declared buffers rather than through each other's pixels.
+ * <p>
+ * Each {@link #addPass(PKernel, Consumer) pass} is one execution of one
+ * kernel, declaring the {@link Buffer buffers} it {@link Pass#reads reads} and
+ * {@link Pass#writes writes} together with how each is bound to the kernel
+ * (typically by assigning an array field). When run, the graph:
+ * <ul>
+ * <li>binds every pass's buffers to its kernel just before it executes, so
+ * intermediates pass from kernel to kernel by reference, with no host
+ * copies;</li>
+ * <li>backs {@link #createBuffer(String, Class, int) transient} buffers whose
+ * lifetimes don't overlap with the same array, so a long chain needs only a
+ * couple of intermediates. Lifetimes are judged by the dependencies between
+ * passes, so sharing an array never serializes independent branches;</li>
+ * <li>runs passes that don't depend on each other concurrently, on a
+ * {@link KernelScheduler}.</li>
+ * </ul>
+ * Aparapi gives each kernel its own device memory, so on the GPU a buffer that
+ * crosses from one kernel to another is transferred (read back after its
+ * writer, uploaded before its reader); buffers passed between passes of the
+ * same kernel stay resident. On the CPU backends nothing is transferred.
+ * <p>
+ * A transient buffer's contents are only defined between the passes that use
+ * it, as its array may be reused by other buffers afterwards (or before).
+ * State that persists across frames, or that the host reads after a run, should
+ * be {@link #importBuffer(String, Object) imported}: imported buffers are never
+ * shared.
+ *
+ * <pre>
+ * FrameGraph graph = new FrameGraph();
+ * Buffer&lt;float[]&gt; blurred = graph.createBuffer("blurred", float[].class, n);
+ * graph.addPass(sim, PKernel::executeImage).writes(state, (k, a) -&gt; k.out = a);
+ * graph.addPass(blur, PKernel::executeImage).reads(state, (k, a) -&gt; k.in = a).writes(blurred, (k, a) -&gt; k.out = a);
+ * graph.addPass(toneMap, PKernel::executeImage).reads(blurred, (k, a) -&gt; k.in = a);
+ * ...
+ * graph.run(); // in draw()
+ * </pre>
+ *
+ * @author Michael Carleton
+ *
+ */
+public final class FrameGraph {
+
+	private final Executor executor;
+	private final List<Buffer<?>> buffers = new ArrayList<>();
+	private final List<Pass<?>> passes = new ArrayList<>();
+	private KernelScheduler scheduler; // compiled graph; null when passes or buffers changed
+	private long transientBytes;
+
+	/**
+	 * Creates a graph that runs passes on the common <code>ForkJoinPool</code>.
+	 */
+	public FrameGraph() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a graph that runs passes on the given executor.
+	 *
+	 * @param executor the executor
+	 */
+	public FrameGraph(Executor executor) {
+		if (executor == null) {
+			throw new NullPointerException("executor");
+		}
+		this.executor = executor;
+	}
+
+	/**
+	 * Declares a transient buffer, whose array the graph allocates and may share
+	 * with other transient buffers of the same type and length.
+	 *
+	 * @param name      name of the buffer, for diagnostics
+	 * @param arrayType type of the array: <code>int[].class</code>,
+	 *                  <code>float[].class</code>, etc.
+	 * @param length    length of the array
+	 * @return the buffer
+	 */
+	public synchronized <T> Buffer<T> createBuffer(String name, Class<T> arrayType, int length) {
+		if (!arrayType.isArray() || !arrayType.getComponentType().isPrimitive() || arrayType == short[].class) {
+			throw new IllegalArgumentException("Buffers must be 1D arrays of a primitive type Aparapi transfers, not " + arrayType.getSimpleName());
+		}
+		if (length < 1) {
+			throw new IllegalArgumentException("Buffer length must be positive");
+		}
+		Buffer<T> buffer = new Buffer<>(name, arrayType, length, null);
+		buffers.add(buffer);
+		scheduler = null;
+		return buffer;
+	}
+
+	/**
+	 * Declares a buffer backed by the given array, which the graph never shares
+	 * with other buffers: for state that persists across frames, or that is
+	 * read or written by the host.
+	 *
+	 * @param name  name of the buffer, for diagnostics
+	 * @param array the array
+	 * @return the buffer
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> Buffer<T> importBuffer(String name, T array) {
+		Class<?> arrayType = array.getClass();
+		if (!arrayType.isArray() || !arrayType.getComponentType().isPrimitive() || arrayType == short[].class) {
+			throw new IllegalArgumentException("Buffers must be 1D arrays of a primitive type Aparapi transfers, not " + arrayType.getSimpleName());
+		}
+		Buffer<T> buffer = new Buffer<>(name, (Class<T>) arrayType, Array.getLength(array), array);
+		buffers.add(buffer);
+		scheduler = null;
+		return buffer;
+	}
+
+	/**
+	 * Adds a pass that executes the given kernel, after the earlier passes whose
+	 * buffers it depends on.
+	 *
+	 * @param kernel    the kernel
+	 * @param execution how to execute it, e.g. <code>PKernel::executeImage</code>
+	 * @return the pass, to declare its buffers on
+	 */
+	public synchronized <K extends PKernel> Pass<K> addPass(K kernel, Consumer<? super K> execution) {
+		Pass<K> pass = new Pass<>(passes.size(), kernel, execution);
+		passes.add(pass);
+		scheduler = null;
+		return pass;
+	}
+
+	/**
+	 * Runs every pass once, concurrently where dependencies allow, and waits for
+	 * all of them to complete.
+	 *
+	 * @return statistics of the run
+	 * @see KernelScheduler#run()
+	 */
+	public KernelScheduler.Stats run() {
+		return runAsync().join();
+	}
+
+	/**
+	 * Runs every pass once, concurrently where dependencies allow.
+	 *
+	 * @return a future completed with statistics of the run
+	 * @see KernelScheduler#runAsync()
+	 */
+	public synchronized CompletableFuture<KernelScheduler.Stats> runAsync() {
+		if (scheduler == null) {
+			compile();
+		}
+		return scheduler.runAsync();
+	}
+
+	/**
+	 * @return total size of the arrays backing transient buffers, in bytes (after
+	 *         the first run)
+	 */
+	public synchronized long getTransientBytes() {
+		return transientBytes;
+	}
+
+	/**
+	 * Assigns arrays to buffers, works out the transfers each pass needs and
+	 * schedules the passes.
+	 */
+	private void compile() {
+		final int n = passes.size();
+		for (Buffer<?> buffer : buffers) {
+			buffer.users = new BitSet(n);
+		}
+		for (Pass<?> pass : passes) {
+			for (Binding<?, ?> binding : pass.bindings) {
+				binding.buffer.users.set(pass.index);
+			}
+		}
+
+		// the ordering the declared buffers imply, before any sharing of arrays
+		final BitSet[] ancestors = new BitSet[n];
+		for (int i = 0; i < n; i++) {
+			ancestors[i] = new BitSet(n);
+			for (int j = 0; j < i; j++) {
+				if (!ancestors[i].get(j) && dependsOn(passes.get(i), passes.get(j))) {
+					ancestors[i].set(j);
+					ancestors[i].or(ancestors[j]);
+				}
+			}
+		}
+
+		// a transient buffer reuses an array once every pass that used the array is
+		// ordered before every pass using the buffer; so sharing never serializes
+		// otherwise independent passes
+		List<Buffer<?>> transients = new ArrayList<>();
+		for (Buffer<?> buffer : buffers) {
+			if (buffer.imported == null) {
+				transients.add(buffer);
+			}
+		}
+		transients.sort(Comparator.comparingInt((Buffer<?> b) -> b.users.isEmpty() ? Integer.MAX_VALUE : b.users.nextSetBit(0)));
+		List<Buffer<?>> arrays = new ArrayList<>(); // first buffer assigned to each distinct array
+		List<BitSet> arrayUsers = new ArrayList<>(); // passes using each distinct array
+		transientBytes = 0;
+		for (Buffer<?> buffer : transients) {
+			int reusable = -1;
+			for (int a = 0; a < arrays.size() && reusable < 0 && !buffer.users.isEmpty(); a++) {
+				if (arrays.get(a).type == buffer.type && arrays.get(a).length == buffer.length) {
+					reusable = a;
+					for (int p = buffer.users.nextSetBit(0); p >= 0 && reusable >= 0; p = buffer.users.nextSetBit(p + 1)) {
+						BitSet unordered = (BitSet) arrayUsers.get(a).clone();
+						unordered.andNot(ancestors[p]);
+						if (!unordered.isEmpty()) {
+							reusable = -1;
+						}
+					}
+				}
+			}
+			if (reusable >= 0) {
+				buffer.array = arrays.get(reusable).array;
+				arrayUsers.get(reusable).or(buffer.users);
+			} else {
+				buffer.array = Array.newInstance(buffer.type.getComponentType(), buffer.length);
+				transientBytes += (long) buffer.length * elementBytes(buffer.type);
+				arrays.add(buffer);
+				arrayUsers.add((BitSet) buffer.users.clone());
+			}
+		}
+
+		// transfers, which only take effect for kernels executing on OpenCL
+		for (Pass<?> pass : passes) {
+			pass.uploads.clear();
+			pass.downloads.clear();
+			for (Binding<?, ?> binding : pass.bindings) {
+				Buffer<?> buffer = binding.buffer;
+				if (binding.read) {
+					Pass<?> writer = lastWriter(buffer, pass.index);
+					if (writer == null || writer.kernel != pass.kernel) {
+						pass.uploads.add(buffer.array);
+					}
+				} else if (buffer.imported != null || readByOtherKernel(buffer, pass)) {
+					pass.downloads.add(buffer.array);
+				}
+			}
+		}
+
+		// buffers sharing an array share its identity, so the scheduler also orders
+		// the passes of buffers that reuse an array after the passes of its earlier
+		// occupants
+		scheduler = new KernelScheduler(executor);
+		for (Pass<?> pass : passes) {
+			pass.schedule(scheduler);
+		}
+	}
+
+	/**
+	 * Whether pass <code>later</code> must run after pass <code>earlier</code>:
+	 * they execute the same kernel, or one writes a buffer the other uses.
+	 */
+	private static boolean dependsOn(Pass<?> later, Pass<?> earlier) {
+		if (later.kernel == earlier.kernel) {
+			return true;
+		}
+		for (Binding<?, ?> a : later.bindings) {
+			for (Binding<?, ?> b : earlier.bindings) {
+				if (a.buffer == b.buffer && (!a.read || !b.read)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private Pass<?> lastWriter(Buffer<?> buffer, int before) {
+		for (int i = before - 1; i >= 0; i--) {
+			for (Binding<?, ?> binding : passes.get(i).bindings) {
+				if (binding.buffer == buffer && !binding.read) {
+					return passes.get(i);
+				}
+			}
+		}
+		return null;
+	}
+
+	private boolean readByOtherKernel(Buffer<?> buffer, Pass<?> writer) {
+		for (int i = writer.index + 1; i < passes.size(); i++) {
+			for (Binding<?, ?> binding : passes.get(i).bindings) {
+				if (binding.buffer == buffer && binding.read && passes.get(i).kernel != writer.kernel) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static int elementBytes(Class<?> arrayType) {
+		Class<?> c = arrayType.getComponentType();
+		return c == long.class || c == double.class ? 8 : c == byte.class || c == boolean.class ? 1 : c == char.class ? 2 : 4;
+	}
+
+	/**
+	 * Transfers an array between the host and the kernel's device (a no-op unless
+	 * the kernel last executed on OpenCL).
+	 */
+	private static void transfer(Kernel kernel, Object array, boolean toDevice) {
+		if (array instanceof int[]) {
+			if (toDevice) {
+				kernel.put((int[]) array);
+			} else {
+				kernel.get((int[]) array);
+			}
+		} else if (array instanceof float[]) {
+			if (toDevice) {
+				kernel.put((float[]) array);
+			} else {
+				kernel.get((float[]) array);
+			}
+		} else if (array instanceof double[]) {
+			if (toDevice) {
+				kernel.put((double[]) array);
+			} else {
+				kernel.get((double[]) array);
+			}
+		} else if (array instanceof long[]) {
+			if (toDevice) {
+				kernel.put((long[]) array);
+			} else {
+				kernel.get((long[]) array);
+			}
+		} else if (array instanceof byte[]) {
+			if (toDevice) {
+				kernel.put((byte[]) array);
+			} else {
+				kernel.get((byte[]) array);
+			}
+		} else if (array instanceof char[]) {
+			if (toDevice) {
+				kernel.put((char[]) array);
+			} else {
+				kernel.get((char[]) array);
+			}
+		} else if (array instanceof boolean[]) {
+			if (toDevice) {
+				kernel.put((boolean[]) array);
+			} else {
+				kernel.get((boolean[]) array);
+			}
+		}
+	}
+
+	/**
+	 * A named array that passes read and write. Its backing array is assigned
+	 * when the graph first runs (immediately, for imported buffers).
+	 *
+	 * @param <T> the array type
+	 */
+	public static final class Buffer<T> {
+
+		private final String name;
+		private final Class<T> type;
+		private final int length;
+		private final T imported;
+		private Object array;
+		private BitSet users; // indices of the passes using the buffer
+
+		private Buffer(String name, Class<T> type, int length, T imported) {
+			this.name = name;
+			this.type = type;
+			this.length = length;
+			this.imported = imported;
+			array = imported;
+		}
+
+		/**
+		 * @return name of the buffer
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return length of the buffer's array
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * Gets the array backing this buffer. For a transient buffer, this may be
+		 * shared with other buffers, and is <code>null</code> until the graph first
+		 * runs.
+		 *
+		 * @return the array
+		 */
+		public T getArray() {
+			return type.cast(array);
+		}
+
+		@Override
+		public String toString() {
+			return name + " (" + type.getComponentType() + "[" + length + "]" + (imported != null ? ", imported" : "") + ")";
+		}
+	}
+
+	private static final class Binding<K, T> {
+
+		final Buffer<T> buffer;
+		final BiConsumer<? super K, ? super T> bind;
+		final boolean read; // else written
+
+		Binding(Buffer<T> buffer, BiConsumer<? super K, ? super T> bind, boolean read) {
+			this.buffer = buffer;
+			this.bind = bind;
+			this.read = read;
+		}
+
+		void bind(K kernel) {
+			bind.accept(kernel, buffer.getArray());
+		}
+	}
+
+	/**
+	 * One execution of one kernel within a {@link FrameGraph}.
+	 *
+	 * @param <K> the kernel type
+	 */
+	public final class Pass<K extends PKernel> {
+
+		private final int index;
+		private final K kernel;
+		private final Consumer<? super K> execution;
+		private final List<Binding<K, ?>> bindings = new ArrayList<>();
+		private final Set<Object> uploads = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final Set<Object> downloads = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		private Pass(int index, K kernel, Consumer<? super K> execution) {
+			this.index = index;
+			this.kernel = kernel;
+			this.execution = execution;
+		}
+
+		/**
+		 * Declares a buffer this pass's kernel reads.
+		 *
+		 * @param buffer  the buffer
+		 * @param binding how to bind the buffer's array to the kernel, e.g.
+		 *                <code>(k, a) -&gt; k.input = a</code>
+		 * @return this pass
+		 */
+		public <T> Pass<K> reads(Buffer<T> buffer, BiConsumer<? super K, ? super T> binding) {
+			return bind(new Binding<>(buffer, binding, true));
+		}
+
+		/**
+		 * Declares a buffer this pass's kernel writes. A buffer the kernel updates
+		 * in place is declared as both read and written.
+		 *
+		 * @param buffer  the buffer
+		 * @param binding how to bind the buffer's array to the kernel, e.g.
+		 *                <code>(k, a) -&gt; k.output = a</code>
+		 * @return this pass
+		 */
+		public <T> Pass<K> writes(Buffer<T> buffer, BiConsumer<? super K, ? super T> binding) {
+			return bind(new Binding<>(buffer, binding, false));
+		}
+
+		/**
+		 * @return the kernel this pass executes
+		 */
+		public K getKernel() {
+			return kernel;
+		}
+
+		private Pass<K> bind(Binding<K, ?> binding) {
+			synchronized (FrameGraph.this) {
+				if (!buffers.contains(binding.buffer)) {
+					throw new IllegalArgumentException("Buffer " + binding.buffer + " belongs to another graph");
+				}
+				bindings.add(binding);
+				scheduler = null;
+			}
+			return this;
+		}
+
+		private void schedule(KernelScheduler scheduler) {
+			final List<Binding<K, ?>> bound = new ArrayList<>(bindings);
+			final Object[] up = uploads.toArray();
+			final Object[] down = downloads.toArray();
+			KernelScheduler.Task task = scheduler.add(kernel, k -> {
+				for (Binding<K, ?> binding : bound) {
+					binding.bind(k);
+				}
+				for (Object array : up) {
+					transfer(k, array, true);
+				}
+				execution.accept(k);
+				for (Object array : down) {
+					transfer(k, array, false);
+				}
+			});
+			for (Binding<K, ?> binding : bound) {
+				if (binding.read) {
+					task.reads(binding.buffer.array);
+				} else {
+					task.writes(binding.buffer.array);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,348 @@
+package micycle.paparapi;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Records the frames a {@link PKernel} presents without stalling the draw loop
+ * (as <code>saveFrame()</code> does). Each {@link #record()} copies the frame
+ * that {@link PKernel#dump()} presents into one of a fixed ring of pooled
+ * buffers and hands it to background encoders. Frame buffers are pooled; pixel
+ * data is never copied beyond the one ring buffer.
+ * <p>
+ * {@link Format#PNG} frames are encoded concurrently, one file per frame.
+ * {@link Format#RAW} and {@link Format#Y4M} frames are appended to a single
+ * stream by one writer thread, in order. When the encoders fall behind and
+ * every buffer is in use, the {@link Policy} decides: {@link Policy#BLOCK}
+ * makes <code>record()</code> wait for a buffer (back-pressure), while
+ * {@link Policy#DROP} skips the frame.
+ *
+ * <pre>
+ * recorder = new FrameRecorder(kernel, Paths.get("frames/frame-######.png"), Format.PNG);
+ * ...
+ * kernel.dump();
+ * kernel.updatePixels();
+ * recorder.record(); // in draw()
+ * ...
+ * recorder.close(); // in exit() / dispose()
+ * </pre>
+ *
+ * @author Michael Carleton
+ *
+ */
+public final class FrameRecorder implements AutoCloseable {
+
+	/**
+	 * Output formats.
+	 */
+	public enum Format {
+		/**
+		 * One PNG file per frame. The path's run of <code>#</code> characters is
+		 * replaced by the zero-padded frame number (as in Processing's
+		 * <code>saveFrame()</code>).
+		 */
+		PNG,
+		/** A single stream of 8-bit RGB frames with no header. */
+		RAW,
+		/**
+		 * A single YUV4MPEG2 stream (4:4:4, BT.601), as read by e.g.
+		 * <code>ffmpeg -i out.y4m</code>.
+		 */
+		Y4M
+	}
+
+	/**
+	 * What {@link FrameRecorder#record()} does when every buffer is still waiting
+	 * to be encoded.
+	 */
+	public enum Policy {
+		/** Wait for a buffer to be freed. No frame is lost, but the draw loop slows to the encoders' pace. */
+		BLOCK,
+		/** Skip the frame. The draw loop never waits. */
+		DROP
+	}
+
+	private static final byte[] Y4M_FRAME_HEADER = "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final PKernel kernel;
+	private final int width, height;
+	private final Format format;
+	private final Policy policy;
+	private final Path path;
+	private final BlockingQueue<int[]> free;
+	private final ExecutorService encoders;
+	private final FileChannel stream; // RAW and Y4M
+	private final ByteBuffer streamBuffer; // one encoded RAW/Y4M frame; used by the writer thread only
+
+	private int frameRate = 60;
+	private int recorded, dropped;
+	private final AtomicInteger encoded = new AtomicInteger();
+	private volatile IOException failure;
+	private boolean closed;
+
+	/**
+	 * Creates a recorder with 4 buffers that blocks when the encoders fall behind.
+	 *
+	 * @param kernel the kernel whose frames to record
+	 * @param path   output file (for PNG, a pattern containing <code>#</code>)
+	 * @param format output format
+	 * @throws IOException if the output can't be created
+	 */
+	public FrameRecorder(PKernel kernel, Path path, Format format) throws IOException {
+		this(kernel, path, format, 4, Policy.BLOCK);
+	}
+
+	/**
+	 * Creates a recorder.
+	 *
+	 * @param kernel  the kernel whose frames to record
+	 * @param path    output file (for PNG, a pattern containing <code>#</code>)
+	 * @param format  output format
+	 * @param buffers number of pooled frame buffers; how many frames may await
+	 *                encoding
+	 * @param policy  what to do when all buffers await encoding
+	 * @throws IOException if the output can't be created
+	 */
+	public FrameRecorder(PKernel kernel, Path path, Format format, int buffers, Policy policy) throws IOException {
+		if (buffers < 1) {
+			throw new IllegalArgumentException("At least one buffer is needed");
+		}
+		if (format == Format.PNG && path.getFileName().toString().indexOf('#') < 0) {
+			throw new IllegalArgumentException("PNG path must contain # for the frame number: " + path);
+		}
+		this.kernel = kernel;
+		this.width = kernel.width;
+		this.height = kernel.height;
+		this.format = format;
+		this.policy = policy;
+		this.path = path;
+
+		free = new ArrayBlockingQueue<>(buffers);
+		for (int i = 0; i < buffers; i++) {
+			free.add(new int[width * height]);
+		}
+
+		final int threads = format == Format.PNG ? Math.max(1, Math.min(buffers, Runtime.getRuntime().availableProcessors() - 1)) : 1;
+		encoders = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "FrameRecorder-" + format.name().toLowerCase());
+			t.setDaemon(true);
+			t.setPriority(Thread.NORM_PRIORITY - 1); // yield to the draw loop
+			return t;
+		});
+
+		if (format == Format.PNG) {
+			Path parent = path.toAbsolutePath().getParent();
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+			stream = null;
+			streamBuffer = null;
+		} else {
+			stream = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			streamBuffer = ByteBuffer.allocateDirect((format == Format.Y4M ? Y4M_FRAME_HEADER.length : 0) + width * height * 3);
+		}
+	}
+
+	/**
+	 * Sets the frame rate recorded in the Y4M header (60 by default). Must be
+	 * called before the first frame is recorded.
+	 *
+	 * @param frameRate frames per second
+	 */
+	public synchronized void setFrameRate(int frameRate) {
+		if (frameRate < 1) {
+			throw new IllegalArgumentException("Frame rate must be positive");
+		}
+		if (recorded > 0) {
+			throw new IllegalStateException("Frame rate must be set before recording");
+		}
+		this.frameRate = frameRate;
+	}
+
+	/**
+	 * Records the kernel's current frame (the one {@link PKernel#dump()}
+	 * presents), encoding it in the background.
+	 *
+	 * @return <code>true</code> if the frame was queued for encoding;
+	 *         <code>false</code> if it was dropped under {@link Policy#DROP}
+	 * @throws UncheckedIOException if encoding an earlier frame failed
+	 */
+	public synchronized boolean record() {
+		if (closed) {
+			throw new IllegalStateException("Recorder is closed");
+		}
+		throwFailure();
+		int[] buffer;
+		if (policy == Policy.DROP) {
+			buffer = free.poll();
+			if (buffer == null) {
+				dropped++;
+				return false;
+			}
+		} else {
+			try {
+				buffer = free.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		kernel.copyFrame(buffer);
+		final int frame = recorded++;
+		encoders.execute(() -> {
+			try {
+				if (failure == null) {
+					encode(buffer, frame);
+					encoded.incrementAndGet();
+				}
+			} catch (IOException e) {
+				failure = e;
+			} catch (RuntimeException e) {
+				failure = new IOException(e);
+			} finally {
+				free.add(buffer);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * @return number of frames queued for encoding so far
+	 */
+	public synchronized int getRecordedFrames() {
+		return recorded;
+	}
+
+	/**
+	 * @return number of frames encoded so far
+	 */
+	public int getEncodedFrames() {
+		return encoded.get();
+	}
+
+	/**
+	 * @return number of frames dropped under {@link Policy#DROP}
+	 */
+	public synchronized int getDroppedFrames() {
+		return dropped;
+	}
+
+	/**
+	 * Waits for every recorded frame to be encoded and closes the output.
+	 *
+	 * @throws IOException if encoding a frame or closing the output failed
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		encoders.shutdown();
+		try {
+			while (!encoders.awaitTermination(1, TimeUnit.SECONDS)) {
+				// encoding a backlog of frames
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (stream != null) {
+				stream.close();
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void throwFailure() {
+		IOException e = failure;
+		if (e != null) {
+			throw new UncheckedIOException("Encoding a recorded frame failed", e);
+		}
+	}
+
+	private void encode(int[] pixels, int frame) throws IOException {
+		switch (format) {
+			case PNG:
+				writePng(pixels, frame);
+				break;
+			case RAW:
+				streamBuffer.clear();
+				for (int argb : pixels) {
+					streamBuffer.put((byte) (argb >> 16)).put((byte) (argb >> 8)).put((byte) argb);
+				}
+				writeStream();
+				break;
+			case Y4M:
+				if (frame == 0) {
+					// from its own buffer: the header may be larger than a tiny frame
+					writeFully(ByteBuffer.wrap(("YUV4MPEG2 W" + width + " H" + height + " F" + frameRate + ":1 Ip A1:1 C444\n")
+							.getBytes(StandardCharsets.US_ASCII)));
+				}
+				streamBuffer.clear();
+				streamBuffer.put(Y4M_FRAME_HEADER);
+				final int planeSize = width * height;
+				final int yPlane = streamBuffer.position(), uPlane = yPlane + planeSize, vPlane = uPlane + planeSize;
+				for (int i = 0; i < planeSize; i++) {
+					// integer BT.601, studio swing
+					int argb = pixels[i];
+					int r = (argb >> 16) & 0xff, g = (argb >> 8) & 0xff, b = argb & 0xff;
+					streamBuffer.put(yPlane + i, (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16));
+					streamBuffer.put(uPlane + i, (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128));
+					streamBuffer.put(vPlane + i, (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128));
+				}
+				streamBuffer.position(vPlane + planeSize);
+				writeStream();
+				break;
+		}
+	}
+
+	private void writeStream() throws IOException {
+		streamBuffer.flip();
+		writeFully(streamBuffer);
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			stream.write(buffer);
+		}
+	}
+
+	private void writePng(int[] pixels, int frame) throws IOException {
+		// wraps the pooled buffer in place rather than copying it into a new image
+		DirectColorModel rgb = new DirectColorModel(24, 0xff0000, 0xff00, 0xff);
+		SinglePixelPackedSampleModel model = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width, height, rgb.getMasks());
+		WritableRaster raster = Raster.createWritableRaster(model, new DataBufferInt(pixels, pixels.length), null);
+		BufferedImage image = new BufferedImage(rgb, raster, false, null);
+
+		String name = path.getFileName().toString();
+		int first = name.indexOf('#'), last = name.lastIndexOf('#');
+		String number = String.format("%0" + (last - first + 1) + "d", frame);
+		Path file = path.resolveSibling(name.substring(0, first) + number + name.substring(last + 1));
+		if (!ImageIO.write(image, "png", file.toFile())) {
+			throw new IOException("No PNG writer available");
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package micycle.paparapi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-memory, lock-free histogram of frame (execution) times over a sliding
+ * time window, from which percentiles, the maximum and jitter can be read.
+ * <p>
+ * Times are bucketed log-linearly (16 sub-buckets per power of two of
+ * microseconds, so a reported percentile is within ~3% of the true value). The
+ * window is split into slices that are recycled as time advances, so samples
+ * older than the window drop out without any per-sample bookkeeping.
+ * <p>
+ * {@link #record(long)} allocates nothing and never blocks; any number of
+ * threads may record and take {@link #snapshot() snapshots} concurrently.
+ * Samples recorded at the very moment a slice is recycled may be lost.
+ *
+ * @author Michael Carleton
+ *
+ */
+public final class FrameTimeHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int HALF = 1 << (SUB_BITS - 1);
+	private static final int MAX_SHIFT = 26; // covers ~2^31us (~35 minutes)
+	private static final int BUCKETS = MAX_SHIFT * HALF + (1 << SUB_BITS);
+	private static final long MAX_MICROS = bucketLowerBound(BUCKETS) - 1;
+	private static final int DEFAULT_SLICES = 10;
+
+	private final int slices;
+	private final long sliceNanos;
+	private final AtomicLongArray counts; // [slice * BUCKETS + bucket]
+	private final AtomicLongArray sliceEpochs; // epoch (nanoTime / sliceNanos) each slice currently holds
+	private final AtomicLongArray sliceMax; // max recorded micros per slice
+
+	/**
+	 * Creates a histogram over a sliding window of 5 seconds.
+	 */
+	public FrameTimeHistogram() {
+		this(5, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Creates a histogram over a sliding window of the given length.
+	 *
+	 * @param window length of the window
+	 * @param unit   unit of <code>window</code>
+	 */
+	public FrameTimeHistogram(long window, TimeUnit unit) {
+		long windowNanos = unit.toNanos(window);
+		if (windowNanos < DEFAULT_SLICES) {
+			throw new IllegalArgumentException("Window too short: " + window + " " + unit);
+		}
+		slices = DEFAULT_SLICES;
+		sliceNanos = windowNanos / slices;
+		counts = new AtomicLongArray(slices * BUCKETS);
+		sliceEpochs = new AtomicLongArray(slices);
+		sliceMax = new AtomicLongArray(slices);
+		for (int i = 0; i < slices; i++) {
+			sliceEpochs.set(i, Long.MIN_VALUE);
+		}
+	}
+
+	/**
+	 * Records a frame time.
+	 *
+	 * @param nanos duration of the frame, in nanoseconds
+	 */
+	public void record(long nanos) {
+		long epoch = Math.floorDiv(System.nanoTime(), sliceNanos);
+		int slice = (int) Math.floorMod(epoch, (long) slices);
+		long held = sliceEpochs.get(slice);
+		if (held < epoch && sliceEpochs.compareAndSet(slice, held, epoch)) {
+			// this thread won the right to recycle the slice's stale samples
+			int base = slice * BUCKETS;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts.lazySet(base + i, 0);
+			}
+			sliceMax.set(slice, 0);
+		}
+
+		long micros = Math.min(MAX_MICROS, Math.max(0, nanos / 1000));
+		counts.incrementAndGet(slice * BUCKETS + bucketOf(micros));
+		long max;
+		while ((max = sliceMax.get(slice)) < micros && !sliceMax.compareAndSet(slice, max, micros)) {
+		}
+	}
+
+	/**
+	 * Computes statistics over the samples recorded within the window.
+	 *
+	 * @return a snapshot of the current statistics
+	 */
+	public Snapshot snapshot() {
+		long epoch = Math.floorDiv(System.nanoTime(), sliceNanos);
+		long[] merged = new long[BUCKETS];
+		long count = 0, max = 0;
+		for (int s = 0; s < slices; s++) {
+			long held = sliceEpochs.get(s);
+			if (held > epoch - slices && held <= epoch) {
+				int base = s * BUCKETS;
+				for (int i = 0; i < BUCKETS; i++) {
+					long c = counts.get(base + i);
+					merged[i] += c;
+					count += c;
+				}
+				max = Math.max(max, sliceMax.get(s));
+			}
+		}
+		if (count == 0) {
+			return new Snapshot(0, 0, 0, 0, 0, 0, 0);
+		}
+
+		double sum = 0, sumSquares = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			if (merged[i] > 0) {
+				double v = Math.min(bucketMidpoint(i), max);
+				sum += v * merged[i];
+				sumSquares += v * v * merged[i];
+			}
+		}
+		double mean = sum / count;
+		double jitter = Math.sqrt(Math.max(0, sumSquares / count - mean * mean));
+		return new Snapshot(count, percentile(merged, count, max, 0.50), percentile(merged, count, max, 0.90),
+				percentile(merged, count, max, 0.99), max / 1000d, mean / 1000d, jitter / 1000d);
+	}
+
+	private static double percentile(long[] merged, long count, long max, double p) {
+		long rank = Math.max(1, (long) Math.ceil(p * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += merged[i];
+			if (seen >= rank) {
+				return Math.min(bucketMidpoint(i), max) / 1000d;
+			}
+		}
+		return max / 1000d;
+	}
+
+	private static int bucketOf(long micros) {
+		int shift = Math.max(0, (63 - Long.numberOfLeadingZeros(micros)) - (SUB_BITS - 1));
+		if (shift == 0) {
+			return (int) micros;
+		}
+		return shift * HALF + (int) (micros >>> shift);
+	}
+
+	private static long bucketLowerBound(int bucket) {
+		if (bucket < (1 << SUB_BITS)) {
+			return bucket;
+		}
+		int shift = (bucket - HALF) / HALF;
+		long mantissa = bucket - shift * HALF;
+		return mantissa << shift;
+	}
+
+	private static double bucketMidpoint(int bucket) {
+		long lower = bucketLowerBound(bucket);
+		return lower + (bucketLowerBound(bucket + 1) - lower - 1) / 2d;
+	}
+
+	/**
+	 * Immutable frame time statistics over a {@link FrameTimeHistogram}'s window.
+	 * All times are in milliseconds.
+	 */
+	public static final class Snapshot {
+
+		private final long count;
+		private final double p50, p90, p99, max, mean, jitter;
+
+		private Snapshot(long count, double p50, double p90, double p99, double max, double mean, double jitter) {
+			this.count = count;
+			this.p50 = p50;
+			this.p90 = p90;
+			this.p99 = p99;
+			this.max = max;
+			this.mean = mean;
+			this.jitter = jitter;
+		}
+
+		/**
+		 * @return number of frames within the window
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return median frame time
+		 */
+		public double getP50() {
+			return p50;
+		}
+
+		/**
+		 * @return 90th percentile frame time
+		 */
+		public double getP90() {
+			return p90;
+		}
+
+		/**
+		 * @return 99th percentile frame time
+		 */
+		public double getP99() {
+			return p99;
+		}
+
+		/**
+		 * @return longest frame time
+		 */
+		public double getMax() {
+			return max;
+		}
+
+		/**
+		 * @return mean frame time
+		 */
+		public double getMean() {
+			return mean;
+		}
+
+		/**
+		 * @return standard deviation of frame times
+		 */
+		public double getJitter() {
+			return jitter;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("n=%d p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms mean=%.3fms jitter=%.3fms", count, p50, p90, p99, max,
+					mean, jitter);
+		}
+	}
+}
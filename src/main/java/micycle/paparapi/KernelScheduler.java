@@ -0,0 +1,405 @@
+package micycle.paparapi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs the executions of several {@link PKernel}s (e.g. a simulation, a
+ * post-process and a HUD) as a dependency graph on a shared executor, so that
+ * kernels that don't depend on each other execute concurrently.
+ * <p>
+ * Each {@link #add(PKernel, Consumer) added} task is one execution of one
+ * kernel. Dependencies follow from the order in which tasks were added plus
+ * what they declare: a task runs after every earlier task that
+ * <ul>
+ * <li>writes a buffer it {@link Task#reads(Object...) reads} or
+ * {@link Task#writes(Object...) writes} (or reads a buffer it writes),</li>
+ * <li>executes the same kernel, or</li>
+ * <li>it was explicitly declared to run {@link Task#after(Task...) after}.</li>
+ * </ul>
+ * Buffers are compared by identity: any object, typically the array a kernel
+ * writes, may serve as one. Each call to {@link #run()} executes the whole graph
+ * once (e.g. once per frame) and reports how much parallelism it achieved.
+ * <p>
+ * With a <code>ForkJoinPool</code> executor (the common pool by default),
+ * kernels on the {@link PKernel.Engine#FORK_JOIN fork/join engine} are switched
+ * to that pool, so their chunks share its cores with the other tasks rather
+ * than each kernel bringing a pool of its own.
+ *
+ * <pre>
+ * KernelScheduler scheduler = new KernelScheduler();
+ * Task sim = scheduler.add(simulation, k -&gt; k.execute(n)).writes(state);
+ * scheduler.add(postProcess, PKernel::executeImage).reads(state);
+ * scheduler.add(hud, PKernel::executeImage); // independent: overlaps the others
+ * ...
+ * scheduler.run(); // in draw()
+ * </pre>
+ *
+ * @author Michael Carleton
+ *
+ */
+public final class KernelScheduler {
+
+	private final Executor executor;
+	private final List<Task> tasks = new ArrayList<>();
+	private CompletableFuture<Stats> lastRun = CompletableFuture.completedFuture(null);
+	private volatile Stats lastStats;
+
+	/**
+	 * Creates a scheduler that runs tasks on the common
+	 * <code>ForkJoinPool</code>.
+	 */
+	public KernelScheduler() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a scheduler that runs tasks on the given executor. Its size bounds
+	 * how many kernels execute at once.
+	 *
+	 * @param executor the executor
+	 */
+	public KernelScheduler(Executor executor) {
+		if (executor == null) {
+			throw new NullPointerException("executor");
+		}
+		this.executor = executor;
+	}
+
+	/**
+	 * Adds a task that executes the given kernel, to run after the earlier tasks
+	 * it depends on.
+	 * <p>
+	 * If this scheduler's executor is a <code>ForkJoinPool</code>, this also sets
+	 * it as the kernel's {@link PKernel#setForkJoinPool(ForkJoinPool) fork/join
+	 * pool}. The change is permanent: it outlives the scheduler and applies to
+	 * the kernel's executions outside it too. Call
+	 * <code>setForkJoinPool()</code> afterwards to choose another pool.
+	 *
+	 * @param kernel    the kernel
+	 * @param execution how to execute it, e.g. <code>PKernel::executeImage</code>
+	 * @return the task, to declare its buffers and dependencies on
+	 */
+	public synchronized <K extends PKernel> Task add(K kernel, Consumer<? super K> execution) {
+		if (executor instanceof ForkJoinPool) {
+			kernel.setForkJoinPool((ForkJoinPool) executor);
+		}
+		Task task = new Task(tasks.size(), kernel, () -> execution.accept(kernel));
+		tasks.add(task);
+		return task;
+	}
+
+	/**
+	 * Executes every task once, concurrently where dependencies allow, and waits
+	 * for all of them to complete.
+	 *
+	 * @return statistics of the run
+	 * @throws java.util.concurrent.CompletionException wrapping the failure of the
+	 *                                                  first task to fail (tasks
+	 *                                                  depending on it are
+	 *                                                  skipped)
+	 */
+	public Stats run() {
+		return runAsync().join();
+	}
+
+	/**
+	 * Executes every task once, concurrently where dependencies allow. If a
+	 * previous run is still in flight, this run starts once it has finished.
+	 *
+	 * @return a future completed with statistics of the run once every task has
+	 *         completed
+	 */
+	public synchronized CompletableFuture<Stats> runAsync() {
+		final int n = tasks.size();
+		final int[][] dependencies = new int[n][];
+		for (int i = 0; i < n; i++) {
+			dependencies[i] = dependencies(i);
+		}
+		final long[] startNanos = new long[n];
+		final long[] endNanos = new long[n];
+		final long[] runStart = new long[1];
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger peak = new AtomicInteger();
+
+		// a failed previous run is reported to its own caller; this one goes ahead
+		CompletableFuture<Void> started = lastRun.handle((s, t) -> null).thenRun(() -> runStart[0] = System.nanoTime());
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[n + 1];
+		for (int i = 0; i < n; i++) {
+			final int id = i;
+			final Task task = tasks.get(i);
+			CompletableFuture<?> ready = started;
+			if (dependencies[i].length > 0) {
+				CompletableFuture<?>[] before = new CompletableFuture<?>[dependencies[i].length];
+				for (int d = 0; d < before.length; d++) {
+					before[d] = futures[dependencies[i][d]];
+				}
+				ready = CompletableFuture.allOf(before);
+			}
+			futures[i] = ready.thenRunAsync(() -> {
+				peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+				startNanos[id] = System.nanoTime();
+				try {
+					task.execute(executor);
+				} finally {
+					endNanos[id] = System.nanoTime();
+					running.decrementAndGet();
+					task.lastNanos = endNanos[id] - startNanos[id];
+				}
+			}, executor);
+		}
+		futures[n] = started;
+
+		lastRun = CompletableFuture.allOf(futures).thenApply(v -> {
+			Stats stats = new Stats(n, runStart[0], startNanos, endNanos, dependencies, peak.get());
+			lastStats = stats;
+			return stats;
+		});
+		return lastRun;
+	}
+
+	/**
+	 * @return statistics of the last completed run; <code>null</code> before the
+	 *         first
+	 */
+	public Stats getLastStats() {
+		return lastStats;
+	}
+
+	/**
+	 * Indices of the earlier tasks that task <code>i</code> must run after.
+	 */
+	private int[] dependencies(int i) {
+		Task task = tasks.get(i);
+		int[] found = new int[i];
+		int count = 0;
+		for (int j = 0; j < i; j++) {
+			Task earlier = tasks.get(j);
+			if (earlier.kernel == task.kernel || task.after.contains(earlier) || intersects(earlier.writes, task.reads)
+					|| intersects(earlier.writes, task.writes) || intersects(earlier.reads, task.writes)) {
+				found[count++] = j;
+			}
+		}
+		int[] dependencies = new int[count];
+		System.arraycopy(found, 0, dependencies, 0, count);
+		return dependencies;
+	}
+
+	private static boolean intersects(Set<Object> a, Set<Object> b) {
+		for (Object o : a) {
+			if (b.contains(o)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * One execution of one kernel within a {@link KernelScheduler}'s graph.
+	 */
+	public final class Task {
+
+		private final int index;
+		private final PKernel kernel;
+		private final Runnable action;
+		private final Set<Object> reads = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final Set<Object> writes = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final List<Task> after = new ArrayList<>();
+		private volatile long lastNanos;
+
+		private Task(int index, PKernel kernel, Runnable action) {
+			this.index = index;
+			this.kernel = kernel;
+			this.action = action;
+		}
+
+		/**
+		 * Declares buffers this task's kernel reads.
+		 *
+		 * @return this task
+		 */
+		public Task reads(Object... buffers) {
+			synchronized (KernelScheduler.this) {
+				Collections.addAll(reads, buffers);
+			}
+			return this;
+		}
+
+		/**
+		 * Declares buffers this task's kernel writes.
+		 *
+		 * @return this task
+		 */
+		public Task writes(Object... buffers) {
+			synchronized (KernelScheduler.this) {
+				Collections.addAll(writes, buffers);
+			}
+			return this;
+		}
+
+		/**
+		 * Declares that this task must run after the given (earlier added) tasks,
+		 * whatever buffers they declare.
+		 *
+		 * @return this task
+		 */
+		public Task after(Task... tasks) {
+			synchronized (KernelScheduler.this) {
+				for (Task t : tasks) {
+					if (t.scheduler() != KernelScheduler.this || t.index >= index) {
+						throw new IllegalArgumentException("A task can only run after tasks added to the same scheduler before it");
+					}
+					after.add(t);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * @return the kernel this task executes
+		 */
+		public PKernel getKernel() {
+			return kernel;
+		}
+
+		/**
+		 * @return duration of this task's execution in the last run, in
+		 *         milliseconds
+		 */
+		public double getLastMillis() {
+			return lastNanos / 1e6;
+		}
+
+		private KernelScheduler scheduler() {
+			return KernelScheduler.this;
+		}
+
+		private void execute(Executor executor) {
+			if (executor instanceof ForkJoinPool && kernel.getEngine() == PKernel.Engine.APARAPI) {
+				// the worker mostly waits on the device (or on Aparapi's own threads)
+				try {
+					ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+						private boolean done;
+
+						@Override
+						public boolean block() {
+							action.run();
+							done = true;
+							return true;
+						}
+
+						@Override
+						public boolean isReleasable() {
+							return done;
+						}
+					});
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			} else {
+				action.run();
+			}
+		}
+	}
+
+	/**
+	 * Immutable statistics of one {@link KernelScheduler#run() run}. All times
+	 * are in milliseconds.
+	 */
+	public static final class Stats {
+
+		private final int tasks;
+		private final double wallMillis;
+		private final double busyMillis;
+		private final double criticalPathMillis;
+		private final int peakConcurrency;
+
+		private Stats(int tasks, long runStart, long[] startNanos, long[] endNanos, int[][] dependencies, int peakConcurrency) {
+			this.tasks = tasks;
+			this.peakConcurrency = peakConcurrency;
+			long end = runStart, busy = 0, criticalPath = 0;
+			long[] pathTo = new long[tasks]; // longest chain of task durations ending with each task
+			for (int i = 0; i < tasks; i++) {
+				long duration = endNanos[i] - startNanos[i];
+				long longestBefore = 0;
+				for (int d : dependencies[i]) {
+					longestBefore = Math.max(longestBefore, pathTo[d]);
+				}
+				pathTo[i] = longestBefore + duration;
+				criticalPath = Math.max(criticalPath, pathTo[i]);
+				busy += duration;
+				end = Math.max(end, endNanos[i]);
+			}
+			wallMillis = (end - runStart) / 1e6;
+			busyMillis = busy / 1e6;
+			criticalPathMillis = criticalPath / 1e6;
+		}
+
+		/**
+		 * @return number of tasks run
+		 */
+		public int getTasks() {
+			return tasks;
+		}
+
+		/**
+		 * @return wall-clock time from the start of the run to the end of its last
+		 *         task
+		 */
+		public double getWallMillis() {
+			return wallMillis;
+		}
+
+		/**
+		 * @return sum of the durations of all tasks
+		 */
+		public double getBusyMillis() {
+			return busyMillis;
+		}
+
+		/**
+		 * @return the longest chain of dependent task durations: the shortest the
+		 *         run could have taken on unlimited cores
+		 */
+		public double getCriticalPathMillis() {
+			return criticalPathMillis;
+		}
+
+		/**
+		 * @return the parallelism actually achieved: busy time over wall time (1 if
+		 *         tasks ran one after another)
+		 */
+		public double getParallelism() {
+			return wallMillis > 0 ? busyMillis / wallMillis : 0;
+		}
+
+		/**
+		 * @return the parallelism the dependency graph allows: busy time over the
+		 *         critical path
+		 */
+		public double getAvailableParallelism() {
+			return criticalPathMillis > 0 ? busyMillis / criticalPathMillis : 0;
+		}
+
+		/**
+		 * @return the most tasks that were executing at the same moment
+		 */
+		public int getPeakConcurrency() {
+			return peakConcurrency;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("tasks=%d wall=%.3fms busy=%.3fms critical=%.3fms parallelism=%.2f (available %.2f) peak=%d", tasks,
+					wallMillis, busyMillis, criticalPathMillis, getParallelism(), getAvailableParallelism(), peakConcurrency);
+		}
+	}
+}
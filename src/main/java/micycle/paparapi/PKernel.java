@@ -1,93 +1,1688 @@
 package micycle.paparapi;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
 import com.aparapi.Kernel;
 import com.aparapi.Range;
+import com.aparapi.device.Device;
+import com.aparapi.device.JavaDevice;
+
+import processing.core.PApplet;
+
+/**
+ * A <i>PKernel</i> encapsulates a pixels parallel algorithm that will execute
+ * either on a GPU (through conversion to OpenCL) or on a CPU via a Java Thread
+ * Pool.
+ * <p>
+ * To write a new kernel, a developer extends the <code>Kernel</code> class and
+ * overrides the <code>Kernel.run()</code> method. To execute this kernel, the
+ * developer creates a new instance of it and calls
+ * <code>Kernel.execute(int globalSize)</code> with a suitable 'global size'. At
+ * runtime Aparapi will attempt to convert the <code>Kernel.run()</code> method
+ * (and any method called directly or indirectly by <code>Kernel.run()</code>)
+ * into OpenCL for execution on GPU devices made available via the OpenCL
+ * platform.
+ * <p>
+ * Kernels that compute one value per sketch pixel should prefer
+ * {@link #executeImage()}, which dispatches a 2D range over
+ * <code>width x height</code>; within <code>run()</code> the pixel's
+ * coordinates are then available from {@link #pixelX()} and {@link #pixelY()}
+ * without any per-item division.
+ * <p>
+ * A kernel presents its pixels to a {@link PixelTarget}: usually the sketch
+ * (see {@link #PKernel(PApplet, int)}), but also a <code>PGraphics</code>, a
+ * <code>BufferedImage</code> or a plain array, which lets the same kernel run
+ * in a headless JVM (see {@link #PKernel(PixelTarget, int)}).
+ * <p>
+ * PKernels run in Aparapi's <i>explicit</i> buffer mode: arrays are not
+ * transferred to and from the device around every execution. PKernel itself
+ * uploads {@link #pixels} only after the host has changed it (e.g. via
+ * {@link #fill(int)}) and reads it back only when the host needs it (e.g. in
+ * {@link #dump()} or {@link #getPixels()}). Whenever execution enters the
+ * device (the first execution, or the first after executions on the host)
+ * every array is transferred, including the read-only noise and sequence
+ * tables and subclass arrays written on the host meanwhile. Subclasses that
+ * modify arrays of their own on the host between device executions must
+ * <code>put()</code> them before the next execution (or call
+ * <code>setExplicit(false)</code> to restore Aparapi's implicit transfers).
+ * <p>
+ * Feedback and iterative kernels (reaction-diffusion, trails, blurs) keep
+ * their state in <i>ping-pong buffers</i>: arrays of twice the state's size,
+ * whose halves alternate between being read and written. Each pass reads the
+ * previous state through {@link #readIndex(int, int)} and writes the next
+ * through {@link #writeIndex(int, int)}; the halves swap roles between passes
+ * and between executions without any copy or transfer, so
+ * {@link #executeImage(int) N iterations} run in a single dispatch:
+ * 
+ * <pre>
+ * final float[] state = new float[2 * width * height];
+ * 
+ * public void run() {
+ * 	int i = pixelIndex();
+ * 	float v = diffuse(state, readIndex(i, width * height));
+ * 	state[writeIndex(i, width * height)] = v;
+ * 	if (lastPass()) {
+ * 		pixels[i] = composeColor(v, v, v);
+ * 	}
+ * }
+ * </pre>
+ * <p>
+ * Kernels whose cost varies widely from pixel to pixel may instead run on the
+ * CPU through a work-stealing <code>ForkJoinPool</code>; see
+ * {@link #setEngine(Engine)}. Which backend (GPU, JTP, SEQ or fork/join) is
+ * fastest for a kernel at a given size can also be
+ * {@link #calibrate(int) determined by trial}.
+ * 
+ * @author Michael Carleton
+ *
+ */
+public abstract class PKernel extends Kernel {
+
+	/** Edge mode: out-of-range coordinates are clamped to the nearest edge. */
+	protected static final int EDGE_CLAMP = 0;
+	/** Edge mode: out-of-range coordinates wrap around (tile). */
+	protected static final int EDGE_WRAP = 1;
+	/** Edge mode: out-of-range coordinates are reflected back into range. */
+	protected static final int EDGE_MIRROR = 2;
+
+	protected final int width, height;
+	/** The sketch this kernel was created for; <code>null</code> when created for another {@link PixelTarget}. */
+	protected final PApplet p;
+	protected final PixelTarget target;
+
+	protected int[] pixels;
+
+	/**
+	 * Offset of this kernel's pixels within the canvas being rendered, added by
+	 * {@link #pixelX()} and {@link #pixelY()}; non-zero only while a
+	 * {@link TiledRenderer} renders a tile.
+	 */
+	protected int originX, originY; // cannot be private
+	/**
+	 * Size of the whole canvas being rendered: <code>width x height</code>
+	 * except while a {@link TiledRenderer} renders a larger one tile by tile.
+	 * Kernels that derive positions from their size (e.g.
+	 * <code>pixelX() / (float) canvasWidth</code>) should use these.
+	 */
+	protected int canvasWidth, canvasHeight; // cannot be private
+
+	/**
+	 * Which half of each ping-pong buffer holds the current state (see
+	 * {@link #readIndex(int, int)}); flipped after every execution of an odd
+	 * number of passes.
+	 */
+	protected int pingPong; // cannot be private
+	/** Number of passes of the execution in progress (see {@link #lastPass()}). */
+	protected int passCount = 1; // cannot be private
+
+	protected final int[] random; // cannot be private
+	/** Seeds the random number generators and noise; see {@link #reseed(long)}. */
+	protected int seed; // cannot be private
+	/**
+	 * Number of executions so far; keys the counter-based generator (see
+	 * {@link #randomInt(int, int)}) so that each frame draws fresh numbers.
+	 */
+	protected int frameIndex; // cannot be private
+	private float fps = 0;
+	private volatile ExecutionProfile lastProfile;
+	private final FrameTimeHistogram frameTimes = new FrameTimeHistogram();
+
+	private boolean pixelsHostDirty; // host changed pixels since the last upload
+	private boolean pixelsDeviceDirty; // device may hold pixels newer than the host's
+	private boolean randomHostDirty; // host reseeded random since the last upload
+
+	private Range imageRange; // cached 2D range for executeImage()
+	private Range localImageRange; // cached 2D range for executeImage(localWidth, localHeight)
+
+	private final Object bufferLock = new Object();
+	private int[] frontPixels; // last completed frame once double-buffered by executeAsync()
+	private ExecutorService asyncExecutor;
+	private volatile CompletableFuture<PKernel> pending;
+	private volatile boolean directOutput;
+
+	private Engine engine = Engine.APARAPI;
+	private ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
+	private Backend backend; // pinned backend; null to let Aparapi (or the engine) choose
+	private Calibrator calibrator;
+	private boolean lastOnDevice; // whether the last execution ran on OpenCL
+	private Range deviceRangeIn, deviceRangeOut; // cache for deviceRange()
+	private boolean modeSelected; // whether deviceRange() set Aparapi's execution mode
+
+	private static final int PARALLEL_FILL_THRESHOLD = 1 << 16; // elements
+
+	private static final int WARM_UP_ITEMS = 4096; // work items per warm-up execution
+	private static final int WARM_UP_EXECUTIONS = 10; // per backend, enough for C2 to compile run()
+	private static final long WARM_UP_BUDGET_NANOS = TimeUnit.SECONDS.toNanos(1); // per backend, for costly kernels
+	private static final ExecutorService WARM_UP_EXECUTOR = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "PKernel-warm-up");
+		t.setDaemon(true);
+		return t;
+	});
+	private boolean warmingUp; // executions are not recorded as frames
+
+	private static final int MAX_DIRTY_RECTS = 16;
+	private final int[] dirtyRects = new int[MAX_DIRTY_RECTS * 4]; // x, y, w, h; for the next frame
+	private int dirtyRectCount;
+	private final int[] frameRects = new int[MAX_DIRTY_RECTS * 4]; // those of the asynchronous frame in flight
+	private int frameRectCount;
+	private final int[] frontRects = new int[MAX_DIRTY_RECTS * 4]; // those of the front frames not yet dumped
+	private int frontRectCount;
+	private boolean frontFull; // a front frame not yet dumped declared no regions: dump it whole
+	private int dirtyTileSize;
+	private boolean[] dirtyTiles;
+	private int updateX0, updateY0, updateX1, updateY1; // region written by the last dump()
+
+	/**
+	 * Creates a kernel that presents to a sketch's pixels, and keeps no random
+	 * state: it draws random numbers from {@link #randomFloat(int, int)} and
+	 * {@link #randomInt(int, int)}.
+	 * 
+	 * @param p the sketch
+	 */
+	protected PKernel(PApplet p) {
+		this(p, 0);
+	}
+
+	/**
+	 * Creates a kernel that presents to a sketch's pixels.
+	 * 
+	 * @param p          the sketch
+	 * @param kernelSize number of work items that will call
+	 *                   {@link #randomHash(int)}
+	 */
+	protected PKernel(PApplet p, int kernelSize) {
+		this(PixelTarget.of(p), p, kernelSize);
+	}
+
+	/**
+	 * Creates a kernel that presents to the given target, such as an offscreen
+	 * image or plain array, and keeps no random state: it draws random numbers
+	 * from {@link #randomFloat(int, int)} and {@link #randomInt(int, int)}.
+	 * 
+	 * @param target the target
+	 */
+	protected PKernel(PixelTarget target) {
+		this(target, 0);
+	}
+
+	/**
+	 * Creates a kernel that presents to the given target, such as an offscreen
+	 * image or plain array; no sketch (or window) is needed.
+	 * 
+	 * @param target     the target
+	 * @param kernelSize number of work items that will call
+	 *                   {@link #randomHash(int)}
+	 */
+	protected PKernel(PixelTarget target, int kernelSize) {
+		this(target, null, kernelSize);
+	}
+
+	/**
+	 * Creates a kernel that presents to a sketch's pixels, with the given seed, so
+	 * that its random numbers and noise are reproducible from run to run.
+	 * 
+	 * @param p          the sketch
+	 * @param kernelSize number of work items that will call
+	 *                   {@link #randomHash(int)}; 0 for kernels that use the
+	 *                   stateless generators
+	 * @param seed       the seed (see {@link #reseed(long)})
+	 */
+	protected PKernel(PApplet p, int kernelSize, long seed) {
+		this(PixelTarget.of(p), p, kernelSize, seed);
+	}
+
+	/**
+	 * Creates a kernel that presents to the given target, with the given seed,
+	 * so that its random numbers and noise are reproducible from run to run.
+	 * 
+	 * @param target     the target
+	 * @param kernelSize number of work items that will call
+	 *                   {@link #randomHash(int)}; 0 for kernels that use the
+	 *                   stateless generators
+	 * @param seed       the seed (see {@link #reseed(long)})
+	 */
+	protected PKernel(PixelTarget target, int kernelSize, long seed) {
+		this(target, null, kernelSize, seed);
+	}
+
+	private PKernel(PixelTarget target, PApplet p, int kernelSize) {
+		this(target, p, kernelSize, System.currentTimeMillis() % Integer.MAX_VALUE);
+	}
+
+	private PKernel(PixelTarget target, PApplet p, int kernelSize, long seed) {
+		this.p = p;
+		this.target = target;
+		width = target.getWidth();
+		height = target.getHeight();
+		target.loadPixels();
+		pixels = new int[width * height];
+		canvasWidth = width;
+		canvasHeight = height;
+
+		random = new int[kernelSize];
+		this.seed = foldSeed(seed);
+		initRandom();
+		setExplicit(true);
+	}
+
+	// Kernel's execute() overloads are synchronized; these aren't, so that a
+	// synchronous execution can wait for an asynchronous one without holding the
+	// lock it needs (see execute(String, Range, int))
+
+	@Override
+	public Kernel execute(int n) {
+		return execute(Range.create(n));
+	}
+
+	@Override
+	public Kernel execute(int n, int passes) {
+		return execute(Range.create(n), passes);
+	}
+
+	@Override
+	public Kernel execute(Range range) {
+		return execute(range, 1);
+	}
+
+	@Override
+	public Kernel execute(Range range, int passes) {
+		return execute("run", range, passes);
+	}
+
+	@Override
+	public Kernel execute(String entrypoint, Range range) {
+		return execute(entrypoint, range, 1);
+	}
+
+	/**
+	 * Executes the kernel over a 2D range of <code>width x height</code> work
+	 * items, letting Aparapi choose the local (work group) sizes. Within
+	 * <code>run()</code>, use {@link #pixelX()}, {@link #pixelY()} and
+	 * {@link #pixelIndex()} to address the pixel of the current work item.
+	 * 
+	 * @return this kernel
+	 */
+	public Kernel executeImage() {
+		return execute(imageRange());
+	}
+
+	/**
+	 * Executes the kernel over a 2D range of <code>width x height</code> work
+	 * items with the given local (work group) sizes. A local size of
+	 * <code>(n, 1)</code> makes each work group cover a horizontal run of pixels.
+	 * 
+	 * @param localWidth  work group size in x; must divide the sketch width
+	 * @param localHeight work group size in y; must divide the sketch height
+	 * @return this kernel
+	 */
+	public Kernel executeImage(int localWidth, int localHeight) {
+		if (localWidth < 1 || width % localWidth != 0 || localHeight < 1 || height % localHeight != 0) {
+			throw new IllegalArgumentException(
+					"Local size " + localWidth + "x" + localHeight + " does not divide image size " + width + "x" + height);
+		}
+		final Range range;
+		synchronized (this) {
+			if (localImageRange == null || localImageRange.getLocalSize(0) != localWidth || localImageRange.getLocalSize(1) != localHeight) {
+				localImageRange = Range.create2D(width, height, localWidth, localHeight);
+			}
+			range = localImageRange;
+		}
+		return execute(range);
+	}
+
+	/**
+	 * Executes <code>passes</code> passes of the kernel over a 2D range of
+	 * <code>width x height</code> work items in a single dispatch; each pass sees
+	 * the previous one's writes. Within <code>run()</code>,
+	 * <code>getPassId()</code> numbers the passes, {@link #lastPass()} marks the
+	 * final one, and ping-pong buffers (see {@link #readIndex(int, int)}) swap
+	 * halves from one pass to the next.
+	 * 
+	 * @param passes number of passes
+	 * @return this kernel
+	 */
+	public Kernel executeImage(int passes) {
+		return execute(imageRange(), passes);
+	}
+
+	/**
+	 * Asynchronously executes the kernel over a 1D range of <code>n</code> work
+	 * items. See {@link #executeAsync(Range)}.
+	 * 
+	 * @param n global size
+	 * @return a future completed once the frame has been rendered
+	 */
+	public CompletableFuture<PKernel> executeAsync(int n) {
+		return executeAsync(Range.create(n));
+	}
+
+	/**
+	 * Asynchronously executes the kernel over a 2D range of
+	 * <code>width x height</code> work items. See {@link #executeAsync(Range)}.
+	 * 
+	 * @return a future completed once the frame has been rendered
+	 */
+	public CompletableFuture<PKernel> executeImageAsync() {
+		return executeAsync(imageRange());
+	}
+
+	/**
+	 * Executes the kernel on a background thread, rendering into a back buffer.
+	 * Once the execution completes the back buffer is swapped (by reference) with
+	 * the front buffer, which is what {@link #dump()} presents. This lets the
+	 * presentation of one frame overlap the computation of the next:
+	 * 
+	 * <pre>
+	 * kernel.executeAsync(n); // renders frame N+1 in the background
+	 * kernel.dump(); // presents frame N
+	 * updatePixels();
+	 * </pre>
+	 * 
+	 * At most one frame is in flight: if the previous asynchronous execution has
+	 * not finished, this method waits for it before submitting the next. Regions
+	 * declared via {@link #markDirty(int, int, int, int)} before this call belong
+	 * to the frame it submits, and are swapped to the front along with it. Note
+	 * that after a swap {@link #pixels} holds the frame before last, so kernels
+	 * that read back their own previous output should use the synchronous
+	 * <code>execute()</code> methods instead.
+	 * <p>
+	 * A synchronous <code>execute()</code> ends double buffering: it waits for the
+	 * frame in flight, makes the most recently completed frame {@link #pixels}
+	 * again, and renders into it, so that {@link #dump()} presents its result.
+	 * Double buffering resumes with the next call to this method.
+	 * 
+	 * @param range the range to execute over
+	 * @return a future completed once the frame has been rendered and swapped to
+	 *         the front
+	 */
+	public CompletableFuture<PKernel> executeAsync(Range range) {
+		awaitPending();
+		synchronized (bufferLock) {
+			if (asyncExecutor == null) {
+				asyncExecutor = Executors.newSingleThreadExecutor(r -> {
+					Thread t = new Thread(r, getClass().getSimpleName() + "-async");
+					t.setDaemon(true);
+					return t;
+				});
+			}
+			if (frontPixels == null) {
+				frontPixels = new int[pixels.length];
+			}
+			System.arraycopy(dirtyRects, 0, frameRects, 0, dirtyRectCount * 4);
+			frameRectCount = dirtyRectCount;
+			dirtyRectCount = 0;
+		}
+		pending = CompletableFuture.supplyAsync(() -> {
+			try {
+				executeFrame("run", range, 1);
+				syncPixels();
+			} catch (RuntimeException e) {
+				synchronized (bufferLock) {
+					dirtyRectCount = mergeRects(frameRects, frameRectCount, dirtyRects, dirtyRectCount);
+				}
+				throw e;
+			}
+			if (!directOutput) {
+				swapBuffers();
+			} else {
+				synchronized (bufferLock) {
+					dirtyRectCount = mergeRects(frameRects, frameRectCount, dirtyRects, dirtyRectCount);
+				}
+			}
+			return this;
+		}, asyncExecutor);
+		return pending;
+	}
+
+	/**
+	 * All synchronous <code>execute()</code> variants funnel through this method,
+	 * which ends any double buffering (see {@link #executeAsync(Range)}) before
+	 * executing.
+	 */
+	@Override
+	public Kernel execute(String entrypoint, Range range, int passes) {
+		endDoubleBuffering();
+		return executeFrame(entrypoint, range, passes);
+	}
+
+	/**
+	 * Where every execution, synchronous or not, is timed and profiled, and where
+	 * the backend is chosen.
+	 */
+	private synchronized Kernel executeFrame(String entrypoint, Range range, int passes) {
+		if (directOutput) {
+			bindDirectOutput();
+		}
+		passCount = passes;
+		Backend selected = calibrator != null ? calibrator.select(range) : backend;
+		boolean trial = calibrator != null && calibrator.getLocked() == null;
+		boolean onHost = selected == null ? engine == Engine.FORK_JOIN : selected != Backend.GPU;
+		if (onHost && lastOnDevice) {
+			syncPixels(); // leaving the device: it may hold newer data
+			if (random.length > 0 && !randomHostDirty) {
+				get(random);
+			}
+		}
+		long nanos;
+		try {
+			if (selected == Backend.FORK_JOIN || (selected == null && engine == Engine.FORK_JOIN)) {
+				nanos = executeForkJoin(entrypoint, range, passes);
+			} else {
+				nanos = executeAparapi(entrypoint, deviceRange(range, selected), passes, !lastOnDevice);
+			}
+		} catch (RuntimeException e) {
+			if (!trial) {
+				throw e;
+			}
+			calibrator.disqualify();
+			return executeFrame(entrypoint, range, passes);
+		}
+		pingPong ^= passes & 1;
+		frameIndex++;
+		if (trial) {
+			calibrator.record(nanos, ranOn(selected));
+		}
+		if (!warmingUp) {
+			frameTimes.record(nanos);
+			fps = (nanos) / 1000000f;
+			fps = 1000 / fps;
+		}
+		return this;
+	}
+
+	/**
+	 * @param enteringDevice whether to transfer every array, as the device's
+	 *                       copies are missing (first execution) or stale
+	 *                       (after executions on the host); harmless if Aparapi
+	 *                       then runs on the host after all
+	 */
+	private long executeAparapi(String entrypoint, Range range, int passes, boolean enteringDevice) {
+		if (pixelsHostDirty) {
+			put(pixels);
+			pixelsHostDirty = false;
+		}
+		if (randomHostDirty) {
+			put(random);
+			randomHostDirty = false;
+		}
+		final boolean transferAll = enteringDevice && isExplicit(); // subclasses may have opted out of explicit mode
+		if (transferAll) {
+			setExplicit(false);
+		}
+		long startTime = System.nanoTime();
+		try {
+			super.execute(entrypoint, range, passes);
+		} finally {
+			if (transferAll) {
+				setExplicit(true);
+			}
+		}
+		long endTime = System.nanoTime() - startTime;
+		lastOnDevice = isRunningCL();
+		pixelsDeviceDirty = lastOnDevice;
+		lastProfile = ExecutionProfile.capture(this, range, passes, endTime);
+		return endTime;
+	}
+
+	private long executeForkJoin(String entrypoint, Range range, int passes) {
+		if (!"run".equals(entrypoint)) {
+			throw new IllegalArgumentException("The fork/join engine only executes run(), not " + entrypoint + "()");
+		}
+		syncPixels(); // a previous Aparapi execution may have left newer pixels on the device
+		long startTime = System.nanoTime();
+		ForkJoinExecution execution = ForkJoinExecution.execute(this, range, passes, forkJoinPool);
+		long endTime = System.nanoTime() - startTime;
+		pixelsHostDirty = true; // the device copy (if any) is now stale
+		lastOnDevice = false;
+		lastProfile = ExecutionProfile.forkJoin(range, passes, endTime, execution.getChunks(), execution.getStolenChunks());
+		return endTime;
+	}
+
+	/**
+	 * Directs Aparapi to the given backend: GPU ranges are bound to the OpenCL
+	 * device, while the Java backends select the corresponding execution mode
+	 * (with unit local sizes for SEQ, which requires them).
+	 * 
+	 * @return the range to execute
+	 */
+	@SuppressWarnings("deprecation") // Aparapi offers no other way to select a Java device per kernel
+	private Range deviceRange(Range range, Backend backend) {
+		EXECUTION_MODE mode = backend == Backend.JTP ? EXECUTION_MODE.JTP : backend == Backend.SEQ ? EXECUTION_MODE.SEQ : EXECUTION_MODE.AUTO;
+		if (backend != null || modeSelected) {
+			if (getExecutionMode() != mode) {
+				setExecutionMode(mode);
+			}
+			modeSelected = backend != null;
+		}
+		if (backend != Backend.GPU && backend != Backend.SEQ) {
+			return range;
+		}
+		Device device = backend == Backend.GPU ? backend.device() : null;
+		if (range == deviceRangeIn && deviceRangeOut.getDevice() == device) {
+			return deviceRangeOut;
+		}
+		int[] global = { range.getGlobalSize(0), range.getGlobalSize(1), range.getGlobalSize(2) };
+		int[] local = { range.getLocalSize(0), range.getLocalSize(1), range.getLocalSize(2) };
+		if (backend == Backend.SEQ) {
+			local = new int[] { 1, 1, 1 };
+		}
+		boolean derived = range.isLocalIsDerived() && backend == Backend.GPU; // let the device choose
+		Range bound;
+		switch (range.getDims()) {
+			case 1:
+				bound = derived ? Range.create(device, global[0]) : Range.create(device, global[0], local[0]);
+				break;
+			case 2:
+				bound = derived ? Range.create2D(device, global[0], global[1])
+						: Range.create2D(device, global[0], global[1], local[0], local[1]);
+				break;
+			default:
+				bound = derived ? Range.create3D(device, global[0], global[1], global[2])
+						: Range.create3D(device, global[0], global[1], global[2], local[0], local[1], local[2]);
+				break;
+		}
+		deviceRangeIn = range;
+		deviceRangeOut = bound;
+		return bound;
+	}
+
+	/**
+	 * @return whether the last execution actually ran on the given backend
+	 *         (rather than an Aparapi fallback)
+	 */
+	private boolean ranOn(Backend backend) {
+		switch (backend) {
+			case GPU:
+				return lastOnDevice;
+			case FORK_JOIN:
+				return true;
+			default:
+				return lastProfile != null && lastProfile.getDeviceType() == (backend == Backend.SEQ ? Device.TYPE.SEQ : Device.TYPE.JTP);
+		}
+	}
+
+	/**
+	 * Pins the backend this kernel executes on, ending any
+	 * {@link #calibrate(int) calibration}.
+	 * 
+	 * @param backend the backend; <code>null</code> to let Aparapi choose its
+	 *                device (or, with the {@link Engine#FORK_JOIN} engine, to
+	 *                execute on the fork/join pool)
+	 */
+	public synchronized void setBackend(Backend backend) {
+		this.backend = backend;
+		calibrator = null;
+	}
+
+	/**
+	 * @return the backend this kernel executes on: the pinned or calibrated one;
+	 *         <code>null</code> if Aparapi chooses or calibration is still on
+	 *         trial
+	 */
+	public synchronized Backend getBackend() {
+		return calibrator != null ? calibrator.getLocked() : backend;
+	}
+
+	/**
+	 * Makes the kernel choose its backend by trial. For each range size it
+	 * executes over, the first frames are executed on each available backend in
+	 * turn (the GPU only if OpenCL offers one): one untimed warm-up frame, then
+	 * <code>framesPerBackend</code> timed frames. The backend with the lowest mean
+	 * frame time is then locked in until the range size changes (e.g. on
+	 * resize).
+	 * <p>
+	 * Decisions are persisted, keyed by kernel class and range size, to
+	 * <code>~/.paparapi/calibration.properties</code> (or the file named by the
+	 * <code>paparapi.calibration</code> system property), so later launches lock
+	 * in immediately. Trial frames are rendered normally. A backend that fails
+	 * (e.g. fork/join on a kernel that uses <code>localBarrier()</code>) is
+	 * disqualified and the frame is re-executed on the next one.
+	 * <p>
+	 * On switching to or from the GPU, PKernel transfers its own arrays as needed;
+	 * subclasses relying on explicit transfers of arrays of their own should pin a
+	 * backend instead.
+	 * 
+	 * @param framesPerBackend number of frames to time per backend, at least 1
+	 */
+	public synchronized void calibrate(int framesPerBackend) {
+		if (framesPerBackend < 1) {
+			throw new IllegalArgumentException("Frames per backend must be at least 1: " + framesPerBackend);
+		}
+		calibrator = new Calibrator(getClass(), framesPerBackend, Backend.available());
+	}
+
+	/**
+	 * @return whether a {@link #calibrate(int) calibration} is still timing
+	 *         backends for the current range size
+	 */
+	public synchronized boolean isCalibrating() {
+		return calibrator != null && calibrator.getLocked() == null;
+	}
+
+	/**
+	 * Reseeds the kernel: re-initializes the {@link #randomHash(int)} state in
+	 * place (in parallel, for large kernels), changes the key of the stateless
+	 * generators and the noise, and restarts the {@link #getFrameIndex() frame
+	 * index} at 0. A kernel reseeded with the same seed then reproduces the same
+	 * frames exactly.
+	 * 
+	 * @param seed the seed; only its hash (32 bits) is used
+	 */
+	public void reseed(long seed) {
+		awaitPending();
+		synchronized (this) {
+			this.seed = foldSeed(seed);
+			initRandom();
+			randomHostDirty = random.length > 0;
+			frameIndex = 0;
+		}
+	}
+
+	/**
+	 * @return the current seed (as folded to 32 bits)
+	 * @see #reseed(long)
+	 */
+	public synchronized int getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Sets the frame index that keys the stateless generators
+	 * ({@link #randomInt(int, int)} etc.) for the next execution; it then
+	 * advances by one per execution. Setting it lets a long render restart at any
+	 * frame and reproduce it exactly (the {@link #randomHash(int)} state, in
+	 * contrast, can only be reproduced by replaying every frame since the seed
+	 * was set).
+	 * 
+	 * @param frameIndex index of the next frame
+	 */
+	public void setFrameIndex(int frameIndex) {
+		awaitPending();
+		synchronized (this) {
+			this.frameIndex = frameIndex;
+		}
+	}
+
+	/**
+	 * @return index of the next frame
+	 * @see #setFrameIndex(int)
+	 */
+	public synchronized int getFrameIndex() {
+		return frameIndex;
+	}
+
+	/**
+	 * Fills {@link #random} with a distinct xorshift state per work item, derived
+	 * from the seed.
+	 */
+	private void initRandom() {
+		final int[] r = random;
+		final int offset = wang_hash(seed);
+		IntStream items = IntStream.range(0, r.length);
+		if (r.length >= PARALLEL_FILL_THRESHOLD) {
+			items = items.parallel();
+		}
+		items.forEach(i -> {
+			int state = wang_hash(i + offset);
+			r[i] = state != 0 ? state : 0x9E3779B9; // zero is xorshift's fixed point
+		});
+	}
+
+	private static int foldSeed(long seed) {
+		return (int) (seed ^ (seed >>> 32));
+	}
+
+	/**
+	 * Warms the kernel up for {@link #executeImage()}. See
+	 * {@link #warmUp(Range)}.
+	 */
+	public void warmUp() {
+		warmUp(imageRange());
+	}
+
+	/**
+	 * Warms the kernel up for executions over ranges like the given one, so that
+	 * the first real frame doesn't stall: triggers Aparapi's bytecode analysis and
+	 * OpenCL conversion, then executes a few reduced-size versions of the range
+	 * (a few thousand work items each) so that the JIT compiles
+	 * <code>run()</code> and the helpers it calls. While
+	 * {@link #calibrate(int) calibrating}, every candidate backend is warmed up;
+	 * otherwise the one the kernel executes on.
+	 * <p>
+	 * The warm-up executes <code>run()</code> for real, so {@link #pixels} and the
+	 * state behind {@link #randomHash(int)} are restored afterwards, and the
+	 * executions are not counted as frames. Other state a kernel modifies in
+	 * <code>run()</code> (its own arrays, say) is not restored.
+	 * <p>
+	 * Call this (or {@link #warmUpAsync(Range)}) once the kernel is fully
+	 * constructed, e.g. at the end of a subclass constructor or in
+	 * <code>setup()</code>; the PKernel constructor can't, as the subclass's
+	 * fields are not yet initialized when it runs.
+	 * 
+	 * @param range a range like those the kernel will execute over
+	 */
+	public void warmUp(Range range) {
+		awaitPending();
+		synchronized (this) {
+			if (lastOnDevice) {
+				syncPixels(); // snapshot the newest state
+				if (random.length > 0 && !randomHostDirty) {
+					get(random);
+				}
+			}
+			final int[] pixelsBefore = pixels.clone();
+			final int[] randomBefore = random.clone();
+			final ExecutionProfile profileBefore = lastProfile;
+			final float fpsBefore = fps;
+			final int pingPongBefore = pingPong;
+			final int frameIndexBefore = frameIndex;
+			final Calibrator calibratorBefore = calibrator;
+			final Backend backendBefore = backend;
+			final List<Backend> backends = calibrator != null ? Backend.available() : Collections.singletonList(getBackend());
+			final Range reduced = reducedRange(range);
+			warmingUp = true;
+			calibrator = null;
+			try {
+				for (Backend b : backends) {
+					backend = b;
+					try {
+						executeFrame("run", reduced, 1); // includes conversion, outside the budget
+						final long start = System.nanoTime();
+						for (int i = 1; i < WARM_UP_EXECUTIONS && System.nanoTime() - start < WARM_UP_BUDGET_NANOS; i++) {
+							executeFrame("run", reduced, 1);
+						}
+					} catch (RuntimeException e) {
+						if (backends.size() == 1) {
+							throw e;
+						} // else a candidate that calibration will disqualify
+					}
+				}
+			} finally {
+				backend = backendBefore;
+				calibrator = calibratorBefore;
+				warmingUp = false;
+				System.arraycopy(pixelsBefore, 0, pixels, 0, pixels.length);
+				System.arraycopy(randomBefore, 0, random, 0, random.length);
+				pixelsDeviceDirty = false;
+				pixelsHostDirty = true;
+				randomHostDirty = random.length > 0;
+				lastProfile = profileBefore;
+				fps = fpsBefore;
+				pingPong = pingPongBefore;
+				frameIndex = frameIndexBefore;
+			}
+		}
+	}
+
+	/**
+	 * Warms the kernel up for {@link #executeImage()} on a background thread.
+	 * See {@link #warmUp(Range)}.
+	 * 
+	 * @return a future completed once the kernel is warm
+	 */
+	public CompletableFuture<PKernel> warmUpAsync() {
+		return warmUpAsync(imageRange());
+	}
+
+	/**
+	 * Warms the kernel up on a background thread. Executions requested meanwhile
+	 * wait for it to finish. See {@link #warmUp(Range)}.
+	 * 
+	 * @param range a range like those the kernel will execute over
+	 * @return a future completed once the kernel is warm
+	 */
+	public CompletableFuture<PKernel> warmUpAsync(Range range) {
+		return CompletableFuture.supplyAsync(() -> {
+			warmUp(range);
+			return this;
+		}, WARM_UP_EXECUTOR);
+	}
+
+	/**
+	 * @return a copy of the range clipped to about {@link #WARM_UP_ITEMS} work
+	 *         items (whole work groups, where local sizes were given)
+	 */
+	private static Range reducedRange(Range range) {
+		int dims = range.getDims();
+		int[] global = new int[3];
+		int items = WARM_UP_ITEMS;
+		for (int d = 0; d < dims; d++) {
+			int share = d == dims - 1 ? items : (int) Math.round(Math.pow(WARM_UP_ITEMS, 1d / dims));
+			int g = Math.max(1, Math.min(range.getGlobalSize(d), share));
+			if (!range.isLocalIsDerived()) {
+				int local = range.getLocalSize(d);
+				g = Math.max(local, g / local * local);
+			}
+			global[d] = g;
+			items = Math.max(1, items / g);
+		}
+		if (range.isLocalIsDerived()) {
+			switch (dims) {
+				case 1:
+					return Range.create(global[0]);
+				case 2:
+					return Range.create2D(global[0], global[1]);
+				default:
+					return Range.create3D(global[0], global[1], global[2]);
+			}
+		}
+		switch (dims) {
+			case 1:
+				return Range.create(global[0], range.getLocalSize(0));
+			case 2:
+				return Range.create2D(global[0], global[1], range.getLocalSize(0), range.getLocalSize(1));
+			default:
+				return Range.create3D(global[0], global[1], global[2], range.getLocalSize(0), range.getLocalSize(1), range.getLocalSize(2));
+		}
+	}
+
+	/**
+	 * Selects how this kernel executes.
+	 * <p>
+	 * {@link Engine#FORK_JOIN} runs <code>run()</code> as plain Java on the
+	 * kernel's fork/join pool (the common pool unless
+	 * {@link #setForkJoinPool(ForkJoinPool) set}), bypassing Aparapi and OpenCL
+	 * entirely. Kernels that call <code>localBarrier()</code> or use local memory
+	 * must stay on {@link Engine#APARAPI}.
+	 * <p>
+	 * Clears any pinned {@link #setBackend(Backend) backend} and ends any
+	 * {@link #calibrate(int) calibration}.
+	 * 
+	 * @param engine the engine to execute with
+	 */
+	public synchronized void setEngine(Engine engine) {
+		if (engine == null) {
+			throw new NullPointerException("engine");
+		}
+		this.engine = engine;
+		backend = null;
+		calibrator = null;
+	}
+
+	/**
+	 * @return the engine this kernel executes with (that of its
+	 *         {@link #getBackend() backend}, if any)
+	 * @see #setEngine(Engine)
+	 */
+	public synchronized Engine getEngine() {
+		Backend b = getBackend();
+		if (b == null) {
+			return engine;
+		}
+		return b == Backend.FORK_JOIN ? Engine.FORK_JOIN : Engine.APARAPI;
+	}
+
+	/**
+	 * Sets the pool that {@link Engine#FORK_JOIN} executions run on, e.g. to
+	 * dedicate fewer than all cores to the kernel.
+	 * 
+	 * @param pool the pool; <code>null</code> restores the common pool
+	 */
+	public synchronized void setForkJoinPool(ForkJoinPool pool) {
+		forkJoinPool = pool == null ? ForkJoinPool.commonPool() : pool;
+	}
+
+	@Override
+	public void dispose() {
+		synchronized (bufferLock) {
+			if (asyncExecutor != null) {
+				asyncExecutor.shutdown();
+			}
+		}
+		super.dispose();
+	}
+
+	/**
+	 * Gets this kernel's pixel array, first reading it back from the device if the
+	 * last execution left newer data there.
+	 * 
+	 * @return the kernel's pixel array
+	 */
+	public int[] getPixels() {
+		awaitPending();
+		syncPixels();
+		return pixels;
+	}
+
+	/**
+	 * Enables or disables direct output. With direct output enabled, the kernel's
+	 * {@link #pixels} array <i>is</i> the target's pixel array (e.g. Processing's
+	 * <code>pixels[]</code>, rebound before each execution should Processing
+	 * reallocate it), so {@link #dump()} copies nothing and only calls
+	 * {@link #updatePixels()}.
+	 * <p>
+	 * Asynchronous executions are not double-buffered while direct output is
+	 * enabled: {@link #dump()} instead waits for the frame in flight to complete.
+	 * 
+	 * @param direct whether the kernel should write straight into the target's
+	 *               pixels
+	 */
+	public void setDirectOutput(boolean direct) {
+		awaitPending();
+		synchronized (this) {
+			if (direct == directOutput) {
+				return;
+			}
+			if (direct) {
+				target.loadPixels();
+				if (target.getPixels().length != width * height) {
+					throw new IllegalStateException("Target pixels no longer match the kernel's " + width + "x" + height + " size");
+				}
+				bindDirectOutput();
+			} else {
+				syncPixels();
+				pixels = pixels.clone();
+			}
+			directOutput = direct;
+		}
+	}
+
+	/**
+	 * @return whether the kernel writes straight into the target's pixels
+	 * @see #setDirectOutput(boolean)
+	 */
+	public boolean isDirectOutput() {
+		return directOutput;
+	}
+
+	/**
+	 * Dumps the kernel's pixel pixels back to Processing's pixels[] (or the
+	 * target's pixel array). Once
+	 * {@link #executeAsync(Range)} has been used, this dumps the front buffer
+	 * (the most recently completed asynchronous frame) without waiting for any
+	 * frame still in flight.
+	 * <p>
+	 * Only the regions declared via {@link #markDirty(int, int, int, int)} since
+	 * the last dump are copied (when double-buffered, those declared for the
+	 * frames swapped to the front since the last dump); failing that, when
+	 * {@link #setDirtyTileSize(int) tile detection} is enabled only tiles that
+	 * differ from the target's pixels are copied; otherwise the whole frame is.
+	 * Follow with {@link #updatePixels()} to push just the copied region.
+	 * <p>
+	 * With {@link #setDirectOutput(boolean) direct output} enabled nothing is
+	 * copied; {@link #updatePixels()} is called instead.
+	 */
+	public void dump() {
+		if (directOutput) {
+			awaitPending();
+			syncPixels();
+			synchronized (bufferLock) {
+				resetUpdateRegion();
+				if (dirtyRectCount == 0) {
+					includeUpdateRegion(0, 0, width, height);
+				}
+				for (int i = 0; i < dirtyRectCount * 4; i += 4) {
+					includeUpdateRegion(dirtyRects[i], dirtyRects[i + 1], dirtyRects[i + 2], dirtyRects[i + 3]);
+				}
+				dirtyRectCount = 0;
+			}
+			updatePixels();
+			return;
+		}
+		if (frontPixels == null) {
+			syncPixels(); // async frames are read back before they are swapped to the front
+		}
+		synchronized (bufferLock) {
+			final int[] src, rects;
+			final int rectCount;
+			if (frontPixels != null) {
+				src = frontPixels;
+				rects = frontRects;
+				rectCount = frontFull ? 0 : frontRectCount;
+				frontRectCount = 0;
+				frontFull = false;
+			} else {
+				src = pixels;
+				rects = dirtyRects;
+				rectCount = dirtyRectCount;
+				dirtyRectCount = 0;
+			}
+			resetUpdateRegion();
+			if (rectCount > 0) {
+				for (int i = 0; i < rectCount * 4; i += 4) {
+					copyRect(src, rects[i], rects[i + 1], rects[i + 2], rects[i + 3]);
+				}
+			} else if (dirtyTileSize > 0) {
+				dumpDirtyTiles(src);
+			} else {
+				System.arraycopy(src, 0, target.getPixels(), 0, src.length);
+				includeUpdateRegion(0, 0, width, height);
+			}
+		}
+	}
+
+	/**
+	 * Copies the frame {@link #dump()} would present into the given array, for
+	 * {@link FrameRecorder}.
+	 * 
+	 * @param dst array of at least <code>width * height</code> elements
+	 */
+	void copyFrame(int[] dst) {
+		if (directOutput) {
+			awaitPending();
+			syncPixels();
+		} else if (frontPixels == null) {
+			syncPixels();
+		}
+		synchronized (bufferLock) {
+			int[] src = frontPixels != null && !directOutput ? frontPixels : pixels;
+			System.arraycopy(src, 0, dst, 0, src.length);
+		}
+	}
+
+	/**
+	 * Calls Processing's <code>updatePixels(x, y, w, h)</code> (or the target's
+	 * equivalent) with the bounding box of the region written by the last
+	 * {@link #dump()}. Does nothing if the last dump wrote nothing. Note the JAVA2D
+	 * renderer always pushes the whole frame.
+	 */
+	public void updatePixels() {
+		int x, y, w, h;
+		synchronized (bufferLock) {
+			if (updateX1 <= updateX0 || updateY1 <= updateY0) {
+				return;
+			}
+			x = updateX0;
+			y = updateY0;
+			w = updateX1 - updateX0;
+			h = updateY1 - updateY0;
+		}
+		target.updatePixels(x, y, w, h);
+	}
+
+	/**
+	 * Declares a region that the kernel has changed, so that the next
+	 * {@link #dump()} copies (and the following {@link #updatePixels()} pushes)
+	 * only the declared regions. The rectangle is clipped to the kernel's bounds;
+	 * once more than a few regions are declared between dumps they are merged
+	 * into their bounding box.
+	 * 
+	 * @param x x coordinate of the region's top-left corner
+	 * @param y y coordinate of the region's top-left corner
+	 * @param w width of the region
+	 * @param h height of the region
+	 */
+	public void markDirty(int x, int y, int w, int h) {
+		int x0 = Math.max(0, x);
+		int y0 = Math.max(0, y);
+		int x1 = Math.min(width, x + w);
+		int y1 = Math.min(height, y + h);
+		if (x1 <= x0 || y1 <= y0) {
+			return;
+		}
+		synchronized (bufferLock) {
+			dirtyRectCount = addRect(dirtyRects, dirtyRectCount, x0, y0, x1, y1);
+		}
+	}
+
+	/**
+	 * Adds the rectangle [x0, x1) x [y0, y1) to a list of dirty rectangles,
+	 * merging the list into its bounding box when it is full.
+	 * 
+	 * @return the new number of rectangles
+	 */
+	private static int addRect(int[] rects, int count, int x0, int y0, int x1, int y1) {
+		if (count == MAX_DIRTY_RECTS) {
+			for (int i = 0; i < count * 4; i += 4) {
+				x0 = Math.min(x0, rects[i]);
+				y0 = Math.min(y0, rects[i + 1]);
+				x1 = Math.max(x1, rects[i] + rects[i + 2]);
+				y1 = Math.max(y1, rects[i + 1] + rects[i + 3]);
+			}
+			count = 0;
+		}
+		int i = count++ * 4;
+		rects[i] = x0;
+		rects[i + 1] = y0;
+		rects[i + 2] = x1 - x0;
+		rects[i + 3] = y1 - y0;
+		return count;
+	}
+
+	/**
+	 * Adds the first <code>count</code> rectangles of <code>src</code> to a list of
+	 * dirty rectangles.
+	 * 
+	 * @return the new number of rectangles in <code>dst</code>
+	 */
+	private static int mergeRects(int[] src, int count, int[] dst, int dstCount) {
+		for (int i = 0; i < count * 4; i += 4) {
+			dstCount = addRect(dst, dstCount, src[i], src[i + 1], src[i] + src[i + 2], src[i + 1] + src[i + 3]);
+		}
+		return dstCount;
+	}
+
+	/**
+	 * Enables per-tile dirty detection: when no regions have been declared via
+	 * {@link #markDirty(int, int, int, int)}, {@link #dump()} compares the
+	 * kernel's pixels against the target's tile by tile and copies only the tiles
+	 * that differ. Not applicable with direct output.
+	 * 
+	 * @param tileSize side length of the square tiles, in pixels; 0 disables
+	 *                 detection
+	 */
+	public void setDirtyTileSize(int tileSize) {
+		if (tileSize < 0) {
+			throw new IllegalArgumentException("Tile size must be non-negative: " + tileSize);
+		}
+		synchronized (bufferLock) {
+			dirtyTileSize = tileSize;
+			dirtyTiles = null;
+		}
+	}
+
+	/**
+	 * Clear this kernel's pixel array (to transparent black), in place.
+	 */
+	public void clear() {
+		fill(0);
+	}
+
+	/**
+	 * Fills this kernel's pixel array with a color, in place. Large arrays are
+	 * filled in parallel chunks. Once double-buffered by
+	 * {@link #executeAsync(Range)}, the front buffer is filled too (after waiting
+	 * for the frame in flight), so the next {@link #dump()} presents the fill.
+	 * 
+	 * @param argb fill color
+	 */
+	public void fill(int argb) {
+		awaitPending();
+		synchronized (this) {
+			fillArray(pixels, argb);
+			synchronized (bufferLock) {
+				if (frontPixels != null && !directOutput) {
+					fillArray(frontPixels, argb);
+					frontFull = true;
+				}
+			}
+			pixelsDeviceDirty = false; // whole array overwritten: no need to read back first
+			pixelsHostDirty = true;
+		}
+	}
+
+	private static void fillArray(int[] a, int argb) {
+		if (a.length < PARALLEL_FILL_THRESHOLD) {
+			Arrays.fill(a, argb);
+		} else {
+			final int chunks = (a.length + PARALLEL_FILL_THRESHOLD - 1) / PARALLEL_FILL_THRESHOLD;
+			IntStream.range(0, chunks).parallel().forEach(c -> {
+				int from = c * PARALLEL_FILL_THRESHOLD;
+				Arrays.fill(a, from, Math.min(a.length, from + PARALLEL_FILL_THRESHOLD), argb);
+			});
+		}
+	}
+
+	/**
+	 * Fills a rectangular region of this kernel's pixel array with a color, in
+	 * place. The rectangle is clipped to the kernel's bounds. As with
+	 * {@link #fill(int)}, a front buffer is filled too.
+	 * 
+	 * @param x    x coordinate of the region's top-left corner
+	 * @param y    y coordinate of the region's top-left corner
+	 * @param w    width of the region
+	 * @param h    height of the region
+	 * @param argb fill color
+	 */
+	public void fillRect(int x, int y, int w, int h, int argb) {
+		final int x0 = Math.max(0, x);
+		final int x1 = Math.min(width, x + w);
+		final int y0 = Math.max(0, y);
+		final int y1 = Math.min(height, y + h);
+		if (x1 <= x0 || y1 <= y0) {
+			return;
+		}
+		awaitPending();
+		synchronized (this) {
+			syncPixels();
+			fillRows(pixels, x0, y0, x1, y1, argb);
+			synchronized (bufferLock) {
+				if (frontPixels != null && !directOutput) {
+					fillRows(frontPixels, x0, y0, x1, y1, argb);
+					frontRectCount = addRect(frontRects, frontRectCount, x0, y0, x1, y1);
+				}
+			}
+			pixelsHostDirty = true;
+		}
+	}
+
+	private void fillRows(int[] a, int x0, int y0, int x1, int y1, int argb) {
+		IntStream rows = IntStream.range(y0, y1);
+		if ((long) (x1 - x0) * (y1 - y0) >= PARALLEL_FILL_THRESHOLD) {
+			rows = rows.parallel();
+		}
+		rows.forEach(row -> Arrays.fill(a, row * width + x0, row * width + x1, argb));
+	}
+
+	/**
+	 * Places this kernel's pixels at the given offset of a (larger) canvas, for
+	 * {@link TiledRenderer}.
+	 */
+	synchronized void setCanvasRegion(int originX, int originY, int canvasWidth, int canvasHeight) {
+		this.originX = originX;
+		this.originY = originY;
+		this.canvasWidth = canvasWidth;
+		this.canvasHeight = canvasHeight;
+	}
+
+	private synchronized Range imageRange() {
+		if (imageRange == null) {
+			imageRange = Range.create2D(width, height);
+		}
+		return imageRange;
+	}
+
+	/**
+	 * Reads {@link #pixels} back from the device if the last execution may have
+	 * left newer data there. A no-op when not running on OpenCL.
+	 */
+	private synchronized void syncPixels() {
+		if (pixelsDeviceDirty) {
+			long startTime = System.nanoTime();
+			get(pixels);
+			pixelsDeviceDirty = false;
+			if (isRunningCL() && lastProfile != null) {
+				lastProfile = lastProfile.withReadback(System.nanoTime() - startTime);
+			}
+		}
+	}
+
+	private void bindDirectOutput() {
+		int[] targetPixels = target.getPixels();
+		if (targetPixels != null && targetPixels.length == width * height) {
+			pixels = targetPixels;
+		}
+	}
+
+	private void dumpDirtyTiles(int[] src) {
+		final int tile = dirtyTileSize;
+		final int tilesX = (width + tile - 1) / tile;
+		final int tilesY = (height + tile - 1) / tile;
+		if (dirtyTiles == null) {
+			dirtyTiles = new boolean[tilesX * tilesY];
+		}
+		final boolean[] tiles = dirtyTiles;
+		final int[] dst = target.getPixels();
+		IntStream.range(0, tilesY).parallel().forEach(ty -> {
+			int y0 = ty * tile;
+			int y1 = Math.min(height, y0 + tile);
+			for (int tx = 0; tx < tilesX; tx++) {
+				int x0 = tx * tile;
+				int x1 = Math.min(width, x0 + tile);
+				boolean dirty = false;
+				for (int y = y0; y < y1 && !dirty; y++) {
+					for (int i = y * width + x0, end = y * width + x1; i < end; i++) {
+						if (src[i] != dst[i]) {
+							dirty = true;
+							break;
+						}
+					}
+				}
+				if (dirty) {
+					for (int y = y0; y < y1; y++) {
+						System.arraycopy(src, y * width + x0, dst, y * width + x0, x1 - x0);
+					}
+				}
+				tiles[ty * tilesX + tx] = dirty;
+			}
+		});
+		for (int ty = 0; ty < tilesY; ty++) {
+			for (int tx = 0; tx < tilesX; tx++) {
+				if (tiles[ty * tilesX + tx]) {
+					includeUpdateRegion(tx * tile, ty * tile, Math.min(tile, width - tx * tile), Math.min(tile, height - ty * tile));
+				}
+			}
+		}
+	}
+
+	private void copyRect(int[] src, int x, int y, int w, int h) {
+		for (int row = y; row < y + h; row++) {
+			System.arraycopy(src, row * width + x, target.getPixels(), row * width + x, w);
+		}
+		includeUpdateRegion(x, y, w, h);
+	}
+
+	private void resetUpdateRegion() {
+		updateX0 = width;
+		updateY0 = height;
+		updateX1 = 0;
+		updateY1 = 0;
+	}
+
+	private void includeUpdateRegion(int x, int y, int w, int h) {
+		updateX0 = Math.min(updateX0, x);
+		updateY0 = Math.min(updateY0, y);
+		updateX1 = Math.max(updateX1, x + w);
+		updateY1 = Math.max(updateY1, y + h);
+	}
+
+	/**
+	 * Swaps the completed asynchronous frame to the front, along with the regions
+	 * declared for it.
+	 */
+	private void swapBuffers() {
+		synchronized (bufferLock) {
+			int[] back = pixels;
+			pixels = frontPixels;
+			frontPixels = back;
+			if (frameRectCount == 0) {
+				frontFull = true;
+			} else {
+				frontRectCount = mergeRects(frameRects, frameRectCount, frontRects, frontRectCount);
+			}
+			frameRectCount = 0;
+		}
+	}
+
+	/**
+	 * Returns from double buffering to a single buffer once the frame in flight
+	 * (if any) has completed: the front buffer, holding the newest frame, becomes
+	 * {@link #pixels} again, and its regions not yet dumped carry over.
+	 */
+	private void endDoubleBuffering() {
+		awaitPending();
+		synchronized (this) {
+			synchronized (bufferLock) {
+				if (frontPixels == null) {
+					return;
+				}
+				if (!directOutput) {
+					pixels = frontPixels;
+					if (frontFull) {
+						dirtyRectCount = 0; // dump the whole frame
+					} else {
+						dirtyRectCount = mergeRects(frontRects, frontRectCount, dirtyRects, dirtyRectCount);
+					}
+					pixelsDeviceDirty = false; // the front buffer was read back before its swap
+					pixelsHostDirty = true; // and is a different array from the device's
+				}
+				frontPixels = null;
+				frontRectCount = 0;
+				frontFull = false;
+			}
+		}
+	}
+
+	/**
+	 * Waits for the asynchronous execution in flight, if any, to finish. Its
+	 * failure (if any) is left for the caller holding its future to observe.
+	 */
+	private void awaitPending() {
+		CompletableFuture<PKernel> previous = pending;
+		if (previous != null && !previous.isDone()) {
+			previous.exceptionally(t -> this).join();
+		}
+	}
+
+	/**
+	 * Get time of last call to {@link #execute(int)}.
+	 * 
+	 * @return
+	 */
+	public float getLastFPS() {
+		return fps;
+	}
+
+	/**
+	 * Gets the per-phase breakdown of the last execution, including the execution
+	 * mode (device type) that actually ran.
+	 * 
+	 * @return profile of the last execution; <code>null</code> if the kernel has
+	 *         not been executed yet
+	 */
+	public ExecutionProfile getLastProfile() {
+		return lastProfile;
+	}
+
+	/**
+	 * Gets the rolling histogram into which the duration of every execution is
+	 * recorded. It can be read (e.g. <code>getFrameTimes().snapshot()</code> for
+	 * p50/p90/p99/max and jitter) from any thread without contending with
+	 * execution.
+	 * 
+	 * @return this kernel's frame time histogram
+	 */
+	public FrameTimeHistogram getFrameTimes() {
+		return frameTimes;
+	}
+
+	// 2D Addressing (not named getX() etc.: aparapi treats no-arg getters as field accessors)
+
+	/**
+	 * Gets the x coordinate of the current work item when executing via
+	 * {@link #executeImage()}, on the canvas (which is the kernel's own pixels
+	 * unless a {@link TiledRenderer} is rendering).
+	 * 
+	 * @return x ∈[0, canvasWidth)
+	 */
+	protected int pixelX() {
+		return getGlobalId(0) + originX;
+	}
+
+	/**
+	 * Gets the y coordinate of the current work item when executing via
+	 * {@link #executeImage()}, on the canvas (which is the kernel's own pixels
+	 * unless a {@link TiledRenderer} is rendering).
+	 * 
+	 * @return y ∈[0, canvasHeight)
+	 */
+	protected int pixelY() {
+		return getGlobalId(1) + originY;
+	}
+
+	/**
+	 * Gets the index into {@link #pixels} of the current work item when executing
+	 * via {@link #executeImage()}. Unlike {@link #pixelX()} and
+	 * {@link #pixelY()}, this is relative to the kernel's own pixels.
+	 * 
+	 * @return row-major pixel index
+	 */
+	protected int pixelIndex() {
+		return getGlobalId(1) * width + getGlobalId(0);
+	}
+
+	/**
+	 * Converts a 1D array index into its 2D index/coordinate.
+	 * 
+	 * @param globalID
+	 * @return
+	 * @deprecated allocates a new array on every call and cannot be converted by
+	 *             aparapi; use {@link #xOf(int)} and {@link #yOf(int)} instead.
+	 */
+	@Deprecated
+	protected int[] getIndex(int globalID) {
+		return new int[] { xOf(globalID), yOf(globalID) };
+	}
 
-import processing.core.PApplet;
+	// Ping-pong buffers (arrays of 2 * size elements; safe to call from run())
 
-/**
- * A <i>PKernel</i> encapsulates a pixels parallel algorithm that will execute
- * either on a GPU (through conversion to OpenCL) or on a CPU via a Java Thread
- * Pool.
- * <p>
- * To write a new kernel, a developer extends the <code>Kernel</code> class and
- * overrides the <code>Kernel.run()</code> method. To execute this kernel, the
- * developer creates a new instance of it and calls
- * <code>Kernel.execute(int globalSize)</code> with a suitable 'global size'. At
- * runtime Aparapi will attempt to convert the <code>Kernel.run()</code> method
- * (and any method called directly or indirectly by <code>Kernel.run()</code>)
- * into OpenCL for execution on GPU devices made available via the OpenCL
- * platform.
- * 
- * @author Michael Carleton
- *
- */
-public abstract class PKernel extends Kernel {
+	/**
+	 * Gets the index to read an element of the current state from, in a
+	 * ping-pong buffer: the half written by the previous pass (or execution).
+	 * 
+	 * @param index element index within the state, ∈[0, size)
+	 * @param size  number of elements in the state (half the buffer's length)
+	 * @return index into the buffer
+	 */
+	protected int readIndex(int index, int size) {
+		return ((pingPong + getPassId()) & 1) * size + index;
+	}
 
-	protected final int width, height;
-	protected final PApplet p;
+	/**
+	 * Gets the index to write an element of the next state to, in a ping-pong
+	 * buffer: the half not being read by this pass.
+	 * 
+	 * @param index element index within the state, ∈[0, size)
+	 * @param size  number of elements in the state (half the buffer's length)
+	 * @return index into the buffer
+	 */
+	protected int writeIndex(int index, int size) {
+		return (((pingPong + getPassId()) & 1) ^ 1) * size + index;
+	}
 
-	protected int[] pixels;
+	/**
+	 * @return whether the current pass is the last of the execution, e.g. to
+	 *         write {@link #pixels} only once per frame
+	 */
+	protected boolean lastPass() {
+		return getPassId() == passCount - 1;
+	}
 
-	protected final int[] random; // cannot be private
-	protected final int seed; // cannot be private
-	private float fps = 0;
+	/**
+	 * Gets the offset of the half of a ping-pong buffer that holds the current
+	 * state, for host code between executions (after <code>get()</code>-ing the
+	 * buffer, if the kernel runs on the GPU). Host code that initialises the
+	 * state writes it there.
+	 * 
+	 * @param size number of elements in the state (half the buffer's length)
+	 * @return offset of the current state's first element
+	 */
+	protected int stateOffset(int size) {
+		return pingPong * size;
+	}
 
-	protected PKernel(PApplet p, int kernelSize) {
-		this.p = p;
-		width = p.width;
-		height = p.height;
-		p.loadPixels();
-		pixels = new int[p.pixels.length];
+	// 1D/2D Addressing (allocation-free; safe to call from run())
 
-		random = new int[kernelSize];
-		for (int i = 0; i < kernelSize; i++) {
-			random[i] = wang_hash(i);
-		}
-		seed = (int) (System.currentTimeMillis() % Integer.MAX_VALUE);
+	/**
+	 * @param index row-major pixel index
+	 * @return the x coordinate of the pixel at the given index
+	 */
+	protected int xOf(int index) {
+		return index % width;
 	}
 
-	@Override
-	public synchronized Kernel execute(int n) {
-		long startTime = System.nanoTime();
-		Kernel k = super.execute(Range.create(n));
-		long endTime = System.nanoTime() - startTime;
-		fps = (endTime) / 1000000f;
-		fps = 1000 / fps;
-		return k;
+	/**
+	 * @param index row-major pixel index
+	 * @return the y coordinate of the pixel at the given index
+	 */
+	protected int yOf(int index) {
+		return index / width;
 	}
 
 	/**
-	 * Dumps the kernel's pixel pixels back to Processing's pixels[].
+	 * @param x ∈[0, width)
+	 * @param y ∈[0, height)
+	 * @return the row-major index of pixel (x, y)
 	 */
-	public void dump() {
-		System.arraycopy(pixels, 0, p.pixels, 0, pixels.length);
+	protected int indexOf(int x, int y) {
+		return y * width + x;
 	}
 
 	/**
-	 * Clear this kernel's pixel array.
+	 * Maps a (possibly out-of-range) coordinate into <code>[0, size)</code>.
+	 * 
+	 * @param v        coordinate
+	 * @param size     extent of the axis
+	 * @param edgeMode one of {@link #EDGE_CLAMP}, {@link #EDGE_WRAP} or
+	 *                 {@link #EDGE_MIRROR}
+	 * @return coordinate ∈[0, size)
 	 */
-	public void clear() {
-		pixels = new int[p.pixels.length];
+	protected int edge(int v, int size, int edgeMode) {
+		if (v >= 0 && v < size) {
+			return v;
+		}
+		if (edgeMode == EDGE_WRAP) {
+			int m = v % size;
+			return m < 0 ? m + size : m;
+		}
+		if (edgeMode == EDGE_MIRROR) {
+			int period = size << 1;
+			int m = v % period;
+			if (m < 0) {
+				m += period;
+			}
+			return m < size ? m : period - 1 - m;
+		}
+		return v < 0 ? 0 : size - 1;
 	}
 
 	/**
-	 * Get time of last call to {@link #execute(int)}.
+	 * Gets the index of the pixel offset by (dx, dy) from the pixel at the given
+	 * index, resolving out-of-range neighbours with the given edge mode.
 	 * 
-	 * @return
+	 * @param index    row-major pixel index
+	 * @param dx       x offset
+	 * @param dy       y offset
+	 * @param edgeMode one of {@link #EDGE_CLAMP}, {@link #EDGE_WRAP} or
+	 *                 {@link #EDGE_MIRROR}
+	 * @return row-major index of the neighbour
 	 */
-	public float getLastFPS() {
-		return fps;
+	protected int neighbourIndex(int index, int dx, int dy, int edgeMode) {
+		return indexOf(edge(xOf(index) + dx, width, edgeMode), edge(yOf(index) + dy, height, edgeMode));
 	}
 
 	/**
-	 * Converts a 1D array index into its 2D index/coordinate.
+	 * Reads the pixel at (x, y), resolving out-of-range coordinates with the given
+	 * edge mode.
 	 * 
-	 * @param globalID
-	 * @return
+	 * @param x        x coordinate
+	 * @param y        y coordinate
+	 * @param edgeMode one of {@link #EDGE_CLAMP}, {@link #EDGE_WRAP} or
+	 *                 {@link #EDGE_MIRROR}
+	 * @return ARGB color
 	 */
-	protected int[] getIndex(int globalID) {
-		return new int[] { globalID % width, globalID / height };
+	protected int pixelAt(int x, int y, int edgeMode) {
+		return pixels[indexOf(edge(x, width, edgeMode), edge(y, height, edgeMode))];
+	}
+
+	/**
+	 * Bilinearly samples {@link #pixels} at a fractional pixel coordinate, clamping
+	 * at the edges. Pixel (i, j) is centred on integer coordinate (i, j).
+	 * 
+	 * @param x x coordinate, in pixels
+	 * @param y y coordinate, in pixels
+	 * @return interpolated ARGB color
+	 */
+	protected int samplePixels(float x, float y) {
+		return samplePixels(x, y, EDGE_CLAMP);
+	}
+
+	/**
+	 * Bilinearly samples {@link #pixels} at a fractional pixel coordinate. Each
+	 * ARGB channel is interpolated independently.
+	 * 
+	 * @param x        x coordinate, in pixels
+	 * @param y        y coordinate, in pixels
+	 * @param edgeMode one of {@link #EDGE_CLAMP}, {@link #EDGE_WRAP} or
+	 *                 {@link #EDGE_MIRROR}
+	 * @return interpolated ARGB color
+	 */
+	protected int samplePixels(float x, float y, int edgeMode) {
+		int x0 = FastFloor(x);
+		int y0 = FastFloor(y);
+		float fx = x - x0;
+		float fy = y - y0;
+
+		int xa = edge(x0, width, edgeMode);
+		int xb = edge(x0 + 1, width, edgeMode);
+		int ya = edge(y0, height, edgeMode) * width;
+		int yb = edge(y0 + 1, height, edgeMode) * width;
+
+		int c00 = pixels[ya + xa];
+		int c10 = pixels[ya + xb];
+		int c01 = pixels[yb + xa];
+		int c11 = pixels[yb + xb];
+
+		int a = lerpChannel(c00, c10, c01, c11, 24, fx, fy);
+		int r = lerpChannel(c00, c10, c01, c11, 16, fx, fy);
+		int g = lerpChannel(c00, c10, c01, c11, 8, fx, fy);
+		int b = lerpChannel(c00, c10, c01, c11, 0, fx, fy);
+		return a << 24 | r << 16 | g << 8 | b;
+	}
+
+	private int lerpChannel(int c00, int c10, int c01, int c11, int shift, float fx, float fy) {
+		float top = Lerp((c00 >> shift) & 0xFF, (c10 >> shift) & 0xFF, fx);
+		float bottom = Lerp((c01 >> shift) & 0xFF, (c11 >> shift) & 0xFF, fx);
+		return (int) (Lerp(top, bottom, fy) + 0.5f);
 	}
 	
 	/**
@@ -116,13 +1711,250 @@ public abstract class PKernel extends Kernel {
 		return min2 + (value - min1) * (max2 - min2) / (max1 - min1);
 	}
 
+	// Counter-based random numbers (stateless; safe to call from run())
+
+	/**
+	 * Gets a random int for the given id (typically the work item's global id)
+	 * and stream, in the current frame. The generator is counter-based
+	 * (Widynski's <i>Squares</i>): the result is a pure function of
+	 * ({@link #seed}, id, {@link #frameIndex}, stream), so no per-item state is
+	 * kept or transferred, and the same inputs always give the same number. Use
+	 * a different stream for each random number a work item draws per frame.
+	 * 
+	 * @param id     identifies the draw, e.g. <code>getGlobalId()</code> or
+	 *               {@link #pixelIndex()}
+	 * @param stream distinguishes draws with the same id in the same frame
+	 * @return uniformly distributed 32 bits
+	 */
+	protected int randomInt(int id, int stream) {
+		return squares32(((long) frameIndex << 32) | (id & 0xffffffffL), squaresKey(seed, stream));
+	}
+
+	/**
+	 * Gets a random float for the given id and stream in the current frame. See
+	 * {@link #randomInt(int, int)}.
+	 * 
+	 * @param id     identifies the draw, e.g. <code>getGlobalId()</code> or
+	 *               {@link #pixelIndex()}
+	 * @param stream distinguishes draws with the same id in the same frame
+	 * @return uniformly distributed ∈[0, 1)
+	 */
+	protected float randomFloat(int id, int stream) {
+		return (randomInt(id, stream) >>> 8) * (1.0f / (1 << 24));
+	}
+
+	// Random distributions (built on the stateless generator; allocation-free; safe to call from run())
+	// Multi-dimensional samples are returned one coordinate per call: calls with
+	// the same id and stream (in the same frame) give coordinates of the same sample
+
+	/**
+	 * Gets a normally distributed random number (Box–Muller transform).
+	 * 
+	 * @param id     identifies the draw (see {@link #randomInt(int, int)})
+	 * @param stream distinguishes draws with the same id in the same frame
+	 * @return a sample of the standard normal distribution (mean 0, standard
+	 *         deviation 1)
+	 */
+	protected float randomGaussian(int id, int stream) {
+		float u1 = 1 - randomFloat(id, stream); // ∈(0, 1], for log()
+		float u2 = randomFloat2(id, stream);
+		return sqrt(-2 * log(u1)) * cos(TWO_PI * u2);
+	}
+
+	/**
+	 * Gets a normally distributed random number with the given mean and standard
+	 * deviation.
+	 * 
+	 * @param id     identifies the draw (see {@link #randomInt(int, int)})
+	 * @param stream distinguishes draws with the same id in the same frame
+	 * @param mean   mean of the distribution
+	 * @param sd     standard deviation of the distribution
+	 * @return a sample of the distribution
+	 */
+	protected float randomGaussian(int id, int stream, float mean, float sd) {
+		return mean + sd * randomGaussian(id, stream);
+	}
+
+	/**
+	 * Gets an exponentially distributed random number, e.g. a free path length or
+	 * the time to the next event of a Poisson process.
+	 * 
+	 * @param id     identifies the draw (see {@link #randomInt(int, int)})
+	 * @param stream distinguishes draws with the same id in the same frame
+	 * @param rate   rate parameter λ (the mean is 1/λ)
+	 * @return a sample ∈[0, ∞)
+	 */
+	protected float randomExponential(int id, int stream, float rate) {
+		return -log(1 - randomFloat(id, stream)) / rate;
+	}
+
+	/**
+	 * @return x coordinate of a point uniformly distributed over the unit disk
+	 * @see #randomDiskY(int, int)
+	 */
+	protected float randomDiskX(int id, int stream) {
+		return sqrt(randomFloat(id, stream)) * cos(TWO_PI * randomFloat2(id, stream));
+	}
+
+	/**
+	 * @return y coordinate of a point uniformly distributed over the unit disk
+	 * @see #randomDiskX(int, int)
+	 */
+	protected float randomDiskY(int id, int stream) {
+		return sqrt(randomFloat(id, stream)) * sin(TWO_PI * randomFloat2(id, stream));
+	}
+
+	/**
+	 * @return x coordinate of a point uniformly distributed over the unit sphere
+	 *         (a uniformly random direction)
+	 * @see #randomSphereY(int, int)
+	 * @see #randomSphereZ(int, int)
+	 */
+	protected float randomSphereX(int id, int stream) {
+		float z = randomSphereZ(id, stream);
+		return sqrt(max(0, 1 - z * z)) * cos(TWO_PI * randomFloat2(id, stream));
+	}
+
+	/**
+	 * @return y coordinate of a point uniformly distributed over the unit sphere
+	 * @see #randomSphereX(int, int)
+	 */
+	protected float randomSphereY(int id, int stream) {
+		float z = randomSphereZ(id, stream);
+		return sqrt(max(0, 1 - z * z)) * sin(TWO_PI * randomFloat2(id, stream));
+	}
+
+	/**
+	 * @return z coordinate of a point uniformly distributed over the unit sphere
+	 * @see #randomSphereX(int, int)
+	 */
+	protected float randomSphereZ(int id, int stream) {
+		return 1 - 2 * randomFloat(id, stream);
+	}
+
+	/**
+	 * Gets the x coordinate of a cosine-weighted direction in the hemisphere about
+	 * +z (Malley's method: a uniform disk point projected up onto the
+	 * hemisphere), as sampled for diffuse reflection.
+	 * 
+	 * @return x coordinate of the unit direction
+	 * @see #randomHemisphereX(int, int, float, float, float)
+	 */
+	protected float randomHemisphereX(int id, int stream) {
+		return randomDiskX(id, stream);
+	}
+
+	/**
+	 * @return y coordinate of a cosine-weighted direction in the hemisphere about
+	 *         +z
+	 * @see #randomHemisphereX(int, int)
+	 */
+	protected float randomHemisphereY(int id, int stream) {
+		return randomDiskY(id, stream);
+	}
+
+	/**
+	 * @return z coordinate of a cosine-weighted direction in the hemisphere about
+	 *         +z
+	 * @see #randomHemisphereX(int, int)
+	 */
+	protected float randomHemisphereZ(int id, int stream) {
+		return sqrt(1 - randomFloat(id, stream)); // sqrt(1 - r²) of the disk point
+	}
+
+	/**
+	 * Gets the x coordinate of a cosine-weighted direction in the hemisphere about
+	 * the given unit normal. The hemisphere about +z is rotated onto the normal
+	 * through a branchless orthonormal basis (Duff et al. 2017).
+	 * 
+	 * @param nx x coordinate of the unit normal
+	 * @param ny y coordinate of the unit normal
+	 * @param nz z coordinate of the unit normal
+	 * @return x coordinate of the unit direction
+	 */
+	protected float randomHemisphereX(int id, int stream, float nx, float ny, float nz) {
+		float sign = nz >= 0 ? 1f : -1f;
+		float a = -1 / (sign + nz);
+		float b = nx * ny * a;
+		return randomHemisphereX(id, stream) * (1 + sign * nx * nx * a) + randomHemisphereY(id, stream) * b
+				+ randomHemisphereZ(id, stream) * nx;
+	}
+
+	/**
+	 * @return y coordinate of a cosine-weighted direction in the hemisphere about
+	 *         the given unit normal
+	 * @see #randomHemisphereX(int, int, float, float, float)
+	 */
+	protected float randomHemisphereY(int id, int stream, float nx, float ny, float nz) {
+		float sign = nz >= 0 ? 1f : -1f;
+		float a = -1 / (sign + nz);
+		float b = nx * ny * a;
+		return randomHemisphereX(id, stream) * (sign * b) + randomHemisphereY(id, stream) * (sign + ny * ny * a)
+				+ randomHemisphereZ(id, stream) * ny;
+	}
+
+	/**
+	 * @return z coordinate of a cosine-weighted direction in the hemisphere about
+	 *         the given unit normal
+	 * @see #randomHemisphereX(int, int, float, float, float)
+	 */
+	protected float randomHemisphereZ(int id, int stream, float nx, float ny, float nz) {
+		float sign = nz >= 0 ? 1f : -1f;
+		return randomHemisphereX(id, stream) * (-sign * nx) - randomHemisphereY(id, stream) * ny + randomHemisphereZ(id, stream) * nz;
+	}
+
+	/**
+	 * The second uniform variate of a two-dimensional sample: the same counter
+	 * under a key no stream maps to (the stream's key with even bits flipped, so
+	 * still odd).
+	 */
+	private float randomFloat2(int id, int stream) {
+		int bits = squares32(((long) frameIndex << 32) | (id & 0xffffffffL), squaresKey(seed, stream) ^ SECOND_DIMENSION_KEY);
+		return (bits >>> 8) * (1.0f / (1 << 24));
+	}
+
+	private static final float TWO_PI = 6.2831855f;
+	private static final long SECOND_DIMENSION_KEY = 0x6A09E667F3BCC908L; // even
+
+	/**
+	 * Squares32: four rounds of squaring a 64-bit counter-key product and
+	 * swapping its halves.
+	 */
+	private static int squares32(long counter, long key) {
+		long x = counter * key;
+		long y = x;
+		long z = y + key;
+		x = x * x + y;
+		x = (x >>> 32) | (x << 32);
+		x = x * x + z;
+		x = (x >>> 32) | (x << 32);
+		x = x * x + y;
+		x = (x >>> 32) | (x << 32);
+		return (int) ((x * x + z) >>> 32);
+	}
+
+	/**
+	 * Derives a Squares key from a seed and stream (SplitMix64's finalizer; odd,
+	 * with well-mixed digits, as Squares requires).
+	 */
+	private static long squaresKey(int seed, int stream) {
+		long k = (((long) seed << 32) | (stream & 0xffffffffL)) + 0x9E3779B97F4A7C15L;
+		k = (k ^ (k >>> 30)) * 0xBF58476D1CE4E5B9L;
+		k = (k ^ (k >>> 27)) * 0x94D049BB133111EBL;
+		return (k ^ (k >>> 31)) | 1L;
+	}
+
 	/**
 	 * Gets the next value in the PRNG sequence for the given GID. Random hash
 	 * (using xor-shift)
 	 * 
 	 * @param seed
 	 * @return 0...1
+	 * @deprecated keeps <code>kernelSize</code> ints of state that is transferred
+	 *             with the kernel and ties a sequence to its GID; use the
+	 *             stateless {@link #randomFloat(int, int)} instead.
 	 */
+	@Deprecated
 	protected float randomHash(final int GID) {
 		random[GID] ^= (random[GID] << 13);
 		random[GID] ^= (random[GID] >> 17);
@@ -139,6 +1971,119 @@ public abstract class PKernel extends Kernel {
 		return seed;
 	}
 
+	// Low-discrepancy sequences (safe to call from run())
+	// Progressive renderers draw sample s of pixel p as sobol(s, d, p) for each
+	// dimension d the sample needs; the sequences stratify over s, converging
+	// faster than independent random samples
+
+	/**
+	 * Gets a coordinate of a point of the Sobol sequence, Owen-scrambled (by
+	 * Burley's hash-based nested uniform scramble) and shuffled independently per
+	 * pixel, so that neighbouring pixels show noise rather than structure.
+	 * Dimensions beyond the first 16 reuse the table with independent scrambles
+	 * and shuffles (padding), keeping them decorrelated but no longer jointly
+	 * stratified with the first 16.
+	 * 
+	 * @param index     sample index
+	 * @param dimension coordinate of the sample (0 for the first)
+	 * @param pixel     pixel (or other entity) the samples are for, e.g.
+	 *                  {@link #pixelIndex()}
+	 * @return the coordinate ∈[0, 1)
+	 */
+	protected float sobol(int index, int dimension, int pixel) {
+		int pixelSeed = wang_hash(pixel ^ wang_hash(seed));
+		int block = dimension / SequenceTables.SOBOL_DIMENSIONS;
+		int shuffled = owenScramble(index, wang_hash(pixelSeed + block * 0x68E31DA4));
+		int bits = sobolBits(shuffled, dimension - block * SequenceTables.SOBOL_DIMENSIONS);
+		bits = owenScramble(bits, wang_hash(pixelSeed ^ (dimension * 0x9E3779B9)));
+		return (bits >>> 8) * (1.0f / (1 << 24));
+	}
+
+	/**
+	 * Gets a coordinate of a point of the Halton sequence (radical inverses in
+	 * successive prime bases), with a Cranley–Patterson rotation per pixel.
+	 * Halton suits low dimensions: beyond the 16th, bases repeat, so prefer
+	 * {@link #sobol(int, int, int)} there.
+	 * 
+	 * @param index     sample index, ≥ 0
+	 * @param dimension coordinate of the sample (0 for the first)
+	 * @param pixel     pixel (or other entity) the samples are for
+	 * @return the coordinate ∈[0, 1)
+	 */
+	protected float halton(int index, int dimension, int pixel) {
+		int base = HaltonPrimes_$constant$[dimension % SequenceTables.HALTON_DIMENSIONS];
+		float invBase = 1f / base;
+		float f = invBase;
+		float r = 0;
+		int i = index;
+		while (i > 0) {
+			r += (i % base) * f;
+			i /= base;
+			f *= invBase;
+		}
+		r += (wang_hash(pixel ^ wang_hash(seed + dimension)) >>> 8) * (1.0f / (1 << 24)); // rotation
+		return r >= 1 ? r - 1 : r;
+	}
+
+	/**
+	 * Gets a coordinate of a point of Roberts' R2 sequence (the additive
+	 * recurrence on the plastic ratio), toroidally shifted per pixel. R2 is
+	 * two-dimensional and the cheapest of the sequences: one multiply-add, in
+	 * fixed point so it stays exact at any index.
+	 * 
+	 * @param index     sample index
+	 * @param dimension 0 for x, 1 for y
+	 * @param pixel     pixel (or other entity) the samples are for
+	 * @return the coordinate ∈[0, 1)
+	 */
+	protected float r2(int index, int dimension, int pixel) {
+		int alpha = (dimension & 1) == 0 ? R2_ALPHA_X : R2_ALPHA_Y;
+		int shift = wang_hash(pixel ^ wang_hash(seed + dimension));
+		return ((index * alpha + shift) >>> 8) * (1.0f / (1 << 24));
+	}
+
+	private static final int R2_ALPHA_X = 0xC13FA9A9; // 2^32 / plastic ratio
+	private static final int R2_ALPHA_Y = 0x91E10DA6; // 2^32 / plastic ratio²
+
+	/**
+	 * XOR of the direction numbers of the bits set in the index.
+	 */
+	private int sobolBits(int index, int dimension) {
+		int x = 0;
+		int offset = dimension * SequenceTables.SOBOL_BITS;
+		int i = index;
+		while (i != 0) {
+			if ((i & 1) != 0) {
+				x ^= SobolDirections_$constant$[offset];
+			}
+			i >>>= 1;
+			offset++;
+		}
+		return x;
+	}
+
+	/**
+	 * Nested uniform (Owen) scramble of a 32-bit fraction: the Laine–Karras hash
+	 * applied to its bit reversal (Burley 2020).
+	 */
+	private static int owenScramble(int x, int seed) {
+		x = reverseBits(x);
+		x += seed;
+		x ^= x * 0x6c50b47c;
+		x ^= x * 0xb82f1e52;
+		x ^= x * 0xc7afe638;
+		x ^= x * 0x8d22f6e6;
+		return reverseBits(x);
+	}
+
+	private static int reverseBits(int x) {
+		x = ((x >>> 1) & 0x55555555) | ((x & 0x55555555) << 1);
+		x = ((x >>> 2) & 0x33333333) | ((x & 0x33333333) << 2);
+		x = ((x >>> 4) & 0x0F0F0F0F) | ((x & 0x0F0F0F0F) << 4);
+		x = ((x >>> 8) & 0x00FF00FF) | ((x & 0x00FF00FF) << 8);
+		return (x >>> 16) | (x << 16);
+	}
+
 	// GLSL-like Functions (aparapi doesn't support static methods)
 
 	/**
@@ -229,6 +2174,152 @@ public abstract class PKernel extends Kernel {
 		return Lerp(yf0, yf1, zs) * 0.964921414852142333984375f;
 	}
 
+	// Simplex Routine //
+	// Cheaper alternatives to noise(): a simplex has 3 (2D) or 4 (3D) corners
+	// where a lattice cell has 4 or 8, and no interpolation between them
+
+	private static final float F2 = 0.36602540378443864676f; // (sqrt(3) - 1) / 2
+	private static final float G2 = 0.21132486540518711775f; // (3 - sqrt(3)) / 6
+	private static final float F3 = 1f / 3;
+	private static final float G3 = 1f / 6;
+
+	/**
+	 * 2D simplex noise, in the OpenSimplex2 formulation: the contributions of the
+	 * 3 corners of the triangle containing the point, using the same hash and
+	 * gradients as {@link #noise(float, float)}.
+	 * 
+	 * @return noise value ∈[-1, 1]
+	 */
+	protected float simplexNoise(float x, float y) {
+		float t = (x + y) * F2;
+		int i = FastFloor(x + t);
+		int j = FastFloor(y + t);
+		float xi = x + t - i;
+		float yi = y + t - j;
+
+		t = (xi + yi) * G2;
+		float x0 = xi - t;
+		float y0 = yi - t;
+
+		i *= PrimeX;
+		j *= PrimeY;
+
+		float n0 = 0, n1 = 0, n2 = 0;
+
+		float a = 0.5f - x0 * x0 - y0 * y0;
+		if (a > 0) {
+			n0 = (a * a) * (a * a) * GradCoord(seed, i, j, x0, y0);
+		}
+
+		// the far corner's falloff, derived from a (OpenSimplex2)
+		float c = (2 * (1 - 2 * G2) * (1 / G2 - 2)) * t + ((-2 * (1 - 2 * G2) * (1 - 2 * G2)) + a);
+		if (c > 0) {
+			float x2 = x0 + (2 * G2 - 1);
+			float y2 = y0 + (2 * G2 - 1);
+			n2 = (c * c) * (c * c) * GradCoord(seed, i + PrimeX, j + PrimeY, x2, y2);
+		}
+
+		if (y0 > x0) {
+			float x1 = x0 + G2;
+			float y1 = y0 + (G2 - 1);
+			float b = 0.5f - x1 * x1 - y1 * y1;
+			if (b > 0) {
+				n1 = (b * b) * (b * b) * GradCoord(seed, i, j + PrimeY, x1, y1);
+			}
+		} else {
+			float x1 = x0 + (G2 - 1);
+			float y1 = y0 + G2;
+			float b = 0.5f - x1 * x1 - y1 * y1;
+			if (b > 0) {
+				n1 = (b * b) * (b * b) * GradCoord(seed, i + PrimeX, j, x1, y1);
+			}
+		}
+
+		return (n0 + n1 + n2) * 99.83685446303647f;
+	}
+
+	/**
+	 * 3D simplex noise: the contributions of the 4 corners of the tetrahedron
+	 * containing the point, using the same hash and gradients as
+	 * {@link #noise(float, float, float)}.
+	 * 
+	 * @return noise value ∈[-1, 1]
+	 */
+	protected float simplexNoise(float x, float y, float z) {
+		float t = (x + y + z) * F3;
+		int i = FastFloor(x + t);
+		int j = FastFloor(y + t);
+		int k = FastFloor(z + t);
+
+		t = (i + j + k) * G3;
+		float x0 = x - (i - t);
+		float y0 = y - (j - t);
+		float z0 = z - (k - t);
+
+		// the second and third corners, stepping along the largest offsets first:
+		// an axis is stepped for the second corner if its offset ranks first, and
+		// for the third if it ranks first or second
+		int rankX = 0;
+		int rankY = 0;
+		int rankZ = 0;
+		if (x0 >= y0) {
+			rankX++;
+		} else {
+			rankY++;
+		}
+		if (x0 >= z0) {
+			rankX++;
+		} else {
+			rankZ++;
+		}
+		if (y0 >= z0) {
+			rankY++;
+		} else {
+			rankZ++;
+		}
+		int i1 = rankX >= 2 ? 1 : 0;
+		int j1 = rankY >= 2 ? 1 : 0;
+		int k1 = rankZ >= 2 ? 1 : 0;
+		int i2 = rankX >= 1 ? 1 : 0;
+		int j2 = rankY >= 1 ? 1 : 0;
+		int k2 = rankZ >= 1 ? 1 : 0;
+
+		float x1 = x0 - i1 + G3;
+		float y1 = y0 - j1 + G3;
+		float z1 = z0 - k1 + G3;
+		float x2 = x0 - i2 + 2 * G3;
+		float y2 = y0 - j2 + 2 * G3;
+		float z2 = z0 - k2 + 2 * G3;
+		float x3 = x0 - 1 + 3 * G3;
+		float y3 = y0 - 1 + 3 * G3;
+		float z3 = z0 - 1 + 3 * G3;
+
+		i *= PrimeX;
+		j *= PrimeY;
+		k *= PrimeZ;
+
+		float n = 0;
+
+		float a = 0.6f - x0 * x0 - y0 * y0 - z0 * z0;
+		if (a > 0) {
+			n += (a * a) * (a * a) * GradCoord(seed, i, j, k, x0, y0, z0);
+		}
+		a = 0.6f - x1 * x1 - y1 * y1 - z1 * z1;
+		if (a > 0) {
+			n += (a * a) * (a * a) * GradCoord(seed, i + i1 * PrimeX, j + j1 * PrimeY, k + k1 * PrimeZ, x1, y1, z1);
+		}
+		a = 0.6f - x2 * x2 - y2 * y2 - z2 * z2;
+		if (a > 0) {
+			n += (a * a) * (a * a) * GradCoord(seed, i + i2 * PrimeX, j + j2 * PrimeY, k + k2 * PrimeZ, x2, y2, z2);
+		}
+		a = 0.6f - x3 * x3 - y3 * y3 - z3 * z3;
+		if (a > 0) {
+			n += (a * a) * (a * a) * GradCoord(seed, i + PrimeX, j + PrimeY, k + PrimeZ, x3, y3, z3);
+		}
+
+		return n * 32.69f; // 32 is customary, but peaks at ~0.978
+	}
+
 	private float GradCoord(int seed, int xPrimed, int yPrimed, float xd, float yd) {
 		int hash = Hash(seed, xPrimed, yPrimed);
 		hash ^= hash >> 15;
@@ -276,55 +2367,84 @@ public abstract class PKernel extends Kernel {
 		return a + t * (b - a);
 	}
 
-	protected final float[] Gradients2D_$constant$ = { 0.130526192220052f, 0.99144486137381f, 0.38268343236509f, 0.923879532511287f,
-			0.608761429008721f, 0.793353340291235f, 0.793353340291235f, 0.608761429008721f, 0.923879532511287f, 0.38268343236509f,
-			0.99144486137381f, 0.130526192220051f, 0.99144486137381f, -0.130526192220051f, 0.923879532511287f, -0.38268343236509f,
-			0.793353340291235f, -0.60876142900872f, 0.608761429008721f, -0.793353340291235f, 0.38268343236509f, -0.923879532511287f,
-			0.130526192220052f, -0.99144486137381f, -0.130526192220052f, -0.99144486137381f, -0.38268343236509f, -0.923879532511287f,
-			-0.608761429008721f, -0.793353340291235f, -0.793353340291235f, -0.608761429008721f, -0.923879532511287f, -0.38268343236509f,
-			-0.99144486137381f, -0.130526192220052f, -0.99144486137381f, 0.130526192220051f, -0.923879532511287f, 0.38268343236509f,
-			-0.793353340291235f, 0.608761429008721f, -0.608761429008721f, 0.793353340291235f, -0.38268343236509f, 0.923879532511287f,
-			-0.130526192220052f, 0.99144486137381f, 0.130526192220052f, 0.99144486137381f, 0.38268343236509f, 0.923879532511287f,
-			0.608761429008721f, 0.793353340291235f, 0.793353340291235f, 0.608761429008721f, 0.923879532511287f, 0.38268343236509f,
-			0.99144486137381f, 0.130526192220051f, 0.99144486137381f, -0.130526192220051f, 0.923879532511287f, -0.38268343236509f,
-			0.793353340291235f, -0.60876142900872f, 0.608761429008721f, -0.793353340291235f, 0.38268343236509f, -0.923879532511287f,
-			0.130526192220052f, -0.99144486137381f, -0.130526192220052f, -0.99144486137381f, -0.38268343236509f, -0.923879532511287f,
-			-0.608761429008721f, -0.793353340291235f, -0.793353340291235f, -0.608761429008721f, -0.923879532511287f, -0.38268343236509f,
-			-0.99144486137381f, -0.130526192220052f, -0.99144486137381f, 0.130526192220051f, -0.923879532511287f, 0.38268343236509f,
-			-0.793353340291235f, 0.608761429008721f, -0.608761429008721f, 0.793353340291235f, -0.38268343236509f, 0.923879532511287f,
-			-0.130526192220052f, 0.99144486137381f, 0.130526192220052f, 0.99144486137381f, 0.38268343236509f, 0.923879532511287f,
-			0.608761429008721f, 0.793353340291235f, 0.793353340291235f, 0.608761429008721f, 0.923879532511287f, 0.38268343236509f,
-			0.99144486137381f, 0.130526192220051f, 0.99144486137381f, -0.130526192220051f, 0.923879532511287f, -0.38268343236509f,
-			0.793353340291235f, -0.60876142900872f, 0.608761429008721f, -0.793353340291235f, 0.38268343236509f, -0.923879532511287f,
-			0.130526192220052f, -0.99144486137381f, -0.130526192220052f, -0.99144486137381f, -0.38268343236509f, -0.923879532511287f,
-			-0.608761429008721f, -0.793353340291235f, -0.793353340291235f, -0.608761429008721f, -0.923879532511287f, -0.38268343236509f,
-			-0.99144486137381f, -0.130526192220052f, -0.99144486137381f, 0.130526192220051f, -0.923879532511287f, 0.38268343236509f,
-			-0.793353340291235f, 0.608761429008721f, -0.608761429008721f, 0.793353340291235f, -0.38268343236509f, 0.923879532511287f,
-			-0.130526192220052f, 0.99144486137381f, 0.130526192220052f, 0.99144486137381f, 0.38268343236509f, 0.923879532511287f,
-			0.608761429008721f, 0.793353340291235f, 0.793353340291235f, 0.608761429008721f, 0.923879532511287f, 0.38268343236509f,
-			0.99144486137381f, 0.130526192220051f, 0.99144486137381f, -0.130526192220051f, 0.923879532511287f, -0.38268343236509f,
-			0.793353340291235f, -0.60876142900872f, 0.608761429008721f, -0.793353340291235f, 0.38268343236509f, -0.923879532511287f,
-			0.130526192220052f, -0.99144486137381f, -0.130526192220052f, -0.99144486137381f, -0.38268343236509f, -0.923879532511287f,
-			-0.608761429008721f, -0.793353340291235f, -0.793353340291235f, -0.608761429008721f, -0.923879532511287f, -0.38268343236509f,
-			-0.99144486137381f, -0.130526192220052f, -0.99144486137381f, 0.130526192220051f, -0.923879532511287f, 0.38268343236509f,
-			-0.793353340291235f, 0.608761429008721f, -0.608761429008721f, 0.793353340291235f, -0.38268343236509f, 0.923879532511287f,
-			-0.130526192220052f, 0.99144486137381f, 0.130526192220052f, 0.99144486137381f, 0.38268343236509f, 0.923879532511287f,
-			0.608761429008721f, 0.793353340291235f, 0.793353340291235f, 0.608761429008721f, 0.923879532511287f, 0.38268343236509f,
-			0.99144486137381f, 0.130526192220051f, 0.99144486137381f, -0.130526192220051f, 0.923879532511287f, -0.38268343236509f,
-			0.793353340291235f, -0.60876142900872f, 0.608761429008721f, -0.793353340291235f, 0.38268343236509f, -0.923879532511287f,
-			0.130526192220052f, -0.99144486137381f, -0.130526192220052f, -0.99144486137381f, -0.38268343236509f, -0.923879532511287f,
-			-0.608761429008721f, -0.793353340291235f, -0.793353340291235f, -0.608761429008721f, -0.923879532511287f, -0.38268343236509f,
-			-0.99144486137381f, -0.130526192220052f, -0.99144486137381f, 0.130526192220051f, -0.923879532511287f, 0.38268343236509f,
-			-0.793353340291235f, 0.608761429008721f, -0.608761429008721f, 0.793353340291235f, -0.38268343236509f, 0.923879532511287f,
-			-0.130526192220052f, 0.99144486137381f, 0.38268343236509f, 0.923879532511287f, 0.923879532511287f, 0.38268343236509f,
-			0.923879532511287f, -0.38268343236509f, 0.38268343236509f, -0.923879532511287f, -0.38268343236509f, -0.923879532511287f,
-			-0.923879532511287f, -0.38268343236509f, -0.923879532511287f, 0.38268343236509f, -0.38268343236509f, 0.923879532511287f, };
-
-	protected float[] Gradients3D_$constant$ = { 0, 1, 1, 0, 0, -1, 1, 0, 0, 1, -1, 0, 0, -1, -1, 0, 1, 0, 1, 0, -1, 0, 1, 0, 1, 0, -1, 0,
-			-1, 0, -1, 0, 1, 1, 0, 0, -1, 1, 0, 0, 1, -1, 0, 0, -1, -1, 0, 0, 0, 1, 1, 0, 0, -1, 1, 0, 0, 1, -1, 0, 0, -1, -1, 0, 1, 0, 1,
-			0, -1, 0, 1, 0, 1, 0, -1, 0, -1, 0, -1, 0, 1, 1, 0, 0, -1, 1, 0, 0, 1, -1, 0, 0, -1, -1, 0, 0, 0, 1, 1, 0, 0, -1, 1, 0, 0, 1,
-			-1, 0, 0, -1, -1, 0, 1, 0, 1, 0, -1, 0, 1, 0, 1, 0, -1, 0, -1, 0, -1, 0, 1, 1, 0, 0, -1, 1, 0, 0, 1, -1, 0, 0, -1, -1, 0, 0, 0,
-			1, 1, 0, 0, -1, 1, 0, 0, 1, -1, 0, 0, -1, -1, 0, 1, 0, 1, 0, -1, 0, 1, 0, 1, 0, -1, 0, -1, 0, -1, 0, 1, 1, 0, 0, -1, 1, 0, 0, 1,
-			-1, 0, 0, -1, -1, 0, 0, 0, 1, 1, 0, 0, -1, 1, 0, 0, 1, -1, 0, 0, -1, -1, 0, 1, 0, 1, 0, -1, 0, 1, 0, 1, 0, -1, 0, -1, 0, -1, 0,
-			1, 1, 0, 0, -1, 1, 0, 0, 1, -1, 0, 0, -1, -1, 0, 0, 1, 1, 0, 0, 0, -1, 1, 0, -1, 1, 0, 0, 0, -1, -1, 0 };
+	protected final float[] Gradients2D_$constant$ = NoiseTables.GRADIENTS_2D.clone();
+
+	protected final float[] Gradients3D_$constant$ = NoiseTables.GRADIENTS_3D.clone();
+
+	protected final int[] SobolDirections_$constant$ = SequenceTables.SOBOL_DIRECTIONS.clone();
+
+	protected final int[] HaltonPrimes_$constant$ = SequenceTables.HALTON_PRIMES.clone();
+
+	/**
+	 * Engines that can execute a {@link PKernel}.
+	 */
+	public enum Engine {
+		/**
+		 * Aparapi: converts the kernel to OpenCL for the GPU, falling back to its
+		 * Java thread pool (JTP) or sequential modes. The default.
+		 */
+		APARAPI,
+		/**
+		 * A work-stealing <code>ForkJoinPool</code> on the CPU. The range is split
+		 * adaptively into chunks, so idle cores steal work from busy ones rather
+		 * than waiting at the end of a frame whose cost is unevenly distributed.
+		 */
+		FORK_JOIN
+	}
+
+	/**
+	 * Backends a {@link PKernel} can execute on.
+	 */
+	public enum Backend {
+		/** An OpenCL GPU, via Aparapi. */
+		GPU,
+		/** Aparapi's Java thread pool. */
+		JTP,
+		/** Aparapi's sequential (single-threaded) Java mode. */
+		SEQ,
+		/** The work-stealing {@link Engine#FORK_JOIN fork/join engine}. */
+		FORK_JOIN;
+
+		private static volatile Device gpu;
+		private static volatile boolean gpuQueried;
+
+		/**
+		 * @return the Aparapi device of this backend; <code>null</code> for
+		 *         fork/join, or for GPU when OpenCL offers none
+		 */
+		@SuppressWarnings("deprecation") // Device.bestGPU() is deprecated, but remains the direct way to find the best OpenCL GPU
+		Device device() {
+			switch (this) {
+				case GPU:
+					if (!gpuQueried) {
+						try {
+							gpu = Device.bestGPU();
+						} catch (RuntimeException | LinkageError e) {
+							gpu = null; // no usable OpenCL
+						}
+						gpuQueried = true;
+					}
+					return gpu;
+				case JTP:
+					return JavaDevice.THREAD_POOL;
+				case SEQ:
+					return JavaDevice.SEQUENTIAL;
+				default:
+					return null;
+			}
+		}
+
+		/**
+		 * @return the backends available in this environment
+		 */
+		static List<Backend> available() {
+			List<Backend> backends = new ArrayList<>();
+			for (Backend b : values()) {
+				if (b == FORK_JOIN || b.device() != null) {
+					backends.add(b);
+				}
+			}
+			return Collections.unmodifiableList(backends);
+		}
+	}
 }
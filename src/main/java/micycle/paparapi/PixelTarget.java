@@ -0,0 +1,258 @@
+package micycle.paparapi;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/**
+ * A surface that a {@link PKernel} presents its pixels to: a row-major array of
+ * ARGB ints plus a way to push changes to wherever they are displayed or
+ * stored.
+ * <p>
+ * Targets exist for Processing sketches ({@link #of(PApplet)}), Processing
+ * images and offscreen graphics ({@link #of(PImage)}), AWT images
+ * ({@link #of(BufferedImage)}) and plain arrays
+ * ({@link #of(int[], int, int)}); the latter two need no Processing window, so
+ * kernels built on them can run in a headless JVM.
+ *
+ * @author Michael Carleton
+ *
+ */
+public interface PixelTarget {
+
+	/**
+	 * @return width of the target, in pixels
+	 */
+	int getWidth();
+
+	/**
+	 * @return height of the target, in pixels
+	 */
+	int getHeight();
+
+	/**
+	 * Makes the target's pixel array current (as Processing's
+	 * <code>loadPixels()</code>). Must be called at least once before
+	 * {@link #getPixels()}.
+	 */
+	void loadPixels();
+
+	/**
+	 * Gets the target's pixel array without reloading it. The array reference may
+	 * change after {@link #loadPixels()}.
+	 *
+	 * @return <code>width * height</code> row-major ARGB pixels
+	 */
+	int[] getPixels();
+
+	/**
+	 * Pushes changes made to the pixel array within the given region to the
+	 * target (as Processing's <code>updatePixels(x, y, w, h)</code>).
+	 */
+	void updatePixels(int x, int y, int w, int h);
+
+	/**
+	 * Targets a sketch's pixels.
+	 */
+	static PixelTarget of(PApplet p) {
+		return new SketchTarget(p);
+	}
+
+	/**
+	 * Targets the pixels of a Processing image, including offscreen
+	 * <code>PGraphics</code>.
+	 */
+	static PixelTarget of(PImage image) {
+		return new PImageTarget(image);
+	}
+
+	/**
+	 * Targets an AWT image. <code>TYPE_INT_ARGB</code> and
+	 * <code>TYPE_INT_RGB</code> images are written in place (no copy); other
+	 * types are converted on {@link #updatePixels(int, int, int, int)}.
+	 */
+	static PixelTarget of(BufferedImage image) {
+		return new BufferedImageTarget(image);
+	}
+
+	/**
+	 * Targets a plain array.
+	 *
+	 * @param pixels row-major ARGB pixels, <code>width * height</code> long
+	 */
+	static PixelTarget of(int[] pixels, int width, int height) {
+		if (pixels.length != width * height) {
+			throw new IllegalArgumentException("Array of length " + pixels.length + " does not match " + width + "x" + height);
+		}
+		return new ArrayTarget(pixels, width, height);
+	}
+
+	/**
+	 * @see PixelTarget#of(PApplet)
+	 */
+	final class SketchTarget implements PixelTarget {
+
+		private final PApplet p;
+
+		private SketchTarget(PApplet p) {
+			this.p = p;
+		}
+
+		@Override
+		public int getWidth() {
+			return p.pixelWidth;
+		}
+
+		@Override
+		public int getHeight() {
+			return p.pixelHeight;
+		}
+
+		@Override
+		public void loadPixels() {
+			p.loadPixels();
+		}
+
+		@Override
+		public int[] getPixels() {
+			return p.pixels;
+		}
+
+		@Override
+		public void updatePixels(int x, int y, int w, int h) {
+			if (x == 0 && y == 0 && w == p.pixelWidth && h == p.pixelHeight) {
+				p.updatePixels(); // JAVA2D warns about (and ignores) regions
+			} else {
+				p.updatePixels(x, y, w, h);
+			}
+		}
+	}
+
+	/**
+	 * @see PixelTarget#of(PImage)
+	 */
+	final class PImageTarget implements PixelTarget {
+
+		private final PImage image;
+
+		private PImageTarget(PImage image) {
+			this.image = image;
+		}
+
+		@Override
+		public int getWidth() {
+			return image.pixelWidth;
+		}
+
+		@Override
+		public int getHeight() {
+			return image.pixelHeight;
+		}
+
+		@Override
+		public void loadPixels() {
+			image.loadPixels();
+		}
+
+		@Override
+		public int[] getPixels() {
+			return image.pixels;
+		}
+
+		@Override
+		public void updatePixels(int x, int y, int w, int h) {
+			image.updatePixels(x, y, w, h);
+		}
+	}
+
+	/**
+	 * @see PixelTarget#of(BufferedImage)
+	 */
+	final class BufferedImageTarget implements PixelTarget {
+
+		private final BufferedImage image;
+		private final boolean direct; // pixels is the image's own raster data
+		private final int[] pixels;
+
+		private BufferedImageTarget(BufferedImage image) {
+			this.image = image;
+			int type = image.getType();
+			direct = (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+					&& image.getRaster().getDataBuffer() instanceof DataBufferInt
+					&& image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel
+					&& ((SinglePixelPackedSampleModel) image.getRaster().getSampleModel()).getScanlineStride() == image.getWidth()
+					&& image.getRaster().getSampleModelTranslateX() == 0 && image.getRaster().getSampleModelTranslateY() == 0;
+			pixels = direct ? ((DataBufferInt) image.getRaster().getDataBuffer()).getData() : new int[image.getWidth() * image.getHeight()];
+		}
+
+		@Override
+		public int getWidth() {
+			return image.getWidth();
+		}
+
+		@Override
+		public int getHeight() {
+			return image.getHeight();
+		}
+
+		@Override
+		public void loadPixels() {
+			if (!direct) {
+				image.getRGB(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+			}
+		}
+
+		@Override
+		public int[] getPixels() {
+			return pixels;
+		}
+
+		@Override
+		public void updatePixels(int x, int y, int w, int h) {
+			if (!direct) {
+				image.setRGB(x, y, w, h, pixels, y * image.getWidth() + x, image.getWidth());
+			}
+		}
+	}
+
+	/**
+	 * @see PixelTarget#of(int[], int, int)
+	 */
+	final class ArrayTarget implements PixelTarget {
+
+		private final int[] pixels;
+		private final int width, height;
+
+		private ArrayTarget(int[] pixels, int width, int height) {
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public int getWidth() {
+			return width;
+		}
+
+		@Override
+		public int getHeight() {
+			return height;
+		}
+
+		@Override
+		public void loadPixels() {
+		}
+
+		@Override
+		public int[] getPixels() {
+			return pixels;
+		}
+
+		@Override
+		public void updatePixels(int x, int y, int w, int h) {
+		}
+	}
+}
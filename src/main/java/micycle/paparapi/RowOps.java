@@ -0,0 +1,130 @@
+package micycle.paparapi;
+
+/**
+ * Host-side, whole-row versions of {@link PKernel}'s <code>noise()</code>,
+ * <code>composeColor()</code>, <code>map()</code> and <code>distance()</code>,
+ * for CPU code paths (e.g. the {@link PKernel.Engine#FORK_JOIN fork/join
+ * engine}, or precomputing textures) that process many samples at once.
+ * <p>
+ * On Java 17+ these methods use the Vector API (<code>jdk.incubator.vector</code>)
+ * to evaluate a full SIMD vector of samples per step, provided the JVM was
+ * started with <code>--add-modules jdk.incubator.vector</code>. Otherwise (or
+ * with <code>-Dpaparapi.vector=false</code>) they fall back to scalar loops.
+ * Both produce results identical to PKernel's own helpers, which remain what
+ * kernels call from <code>run()</code> and what Aparapi converts to OpenCL.
+ * <p>
+ * Each method processes the elements <code>[offset, offset + length)</code> of
+ * its arrays; output arrays may be the same as input arrays.
+ *
+ * @author Michael Carleton
+ *
+ */
+public final class RowOps {
+
+	private static final ScalarRowOps IMPL = load();
+
+	private RowOps() {
+	}
+
+	/**
+	 * Evaluates 2D Perlin noise at each <code>(x[i], y[i])</code>.
+	 *
+	 * @param seed noise seed; pass a kernel's <code>seed</code> to match its
+	 *             <code>noise()</code>
+	 */
+	public static void noise(int seed, float[] x, float[] y, float[] out, int offset, int length) {
+		checkRange(offset, length, x.length, y.length, out.length);
+		IMPL.noise(seed, x, y, out, offset, offset + length);
+	}
+
+	/**
+	 * Evaluates 3D Perlin noise at each <code>(x[i], y[i], z[i])</code>.
+	 *
+	 * @param seed noise seed; pass a kernel's <code>seed</code> to match its
+	 *             <code>noise()</code>
+	 */
+	public static void noise(int seed, float[] x, float[] y, float[] z, float[] out, int offset, int length) {
+		checkRange(offset, length, x.length, y.length, z.length, out.length);
+		IMPL.noise(seed, x, y, z, out, offset, offset + length);
+	}
+
+	/**
+	 * Evaluates 2D Perlin noise along a row: <code>out[offset + i]</code> is the
+	 * noise at <code>(x0 + i * dx, y)</code>.
+	 *
+	 * @param seed noise seed; pass a kernel's <code>seed</code> to match its
+	 *             <code>noise()</code>
+	 */
+	public static void noiseRow(int seed, float x0, float dx, float y, float[] out, int offset, int length) {
+		checkRange(offset, length, out.length);
+		IMPL.noiseRow(seed, x0, dx, y, out, offset, offset, offset + length);
+	}
+
+	/**
+	 * Evaluates 3D Perlin noise along a row: <code>out[offset + i]</code> is the
+	 * noise at <code>(x0 + i * dx, y, z)</code>.
+	 *
+	 * @param seed noise seed; pass a kernel's <code>seed</code> to match its
+	 *             <code>noise()</code>
+	 */
+	public static void noiseRow(int seed, float x0, float dx, float y, float z, float[] out, int offset, int length) {
+		checkRange(offset, length, out.length);
+		IMPL.noiseRow(seed, x0, dx, y, z, out, offset, offset, offset + length);
+	}
+
+	/**
+	 * Packs channels ∈[0, 1] into ARGB ints, as
+	 * <code>composeColor(r, g, b, a)</code>.
+	 */
+	public static void composeColor(float[] r, float[] g, float[] b, float[] a, int[] out, int offset, int length) {
+		checkRange(offset, length, r.length, g.length, b.length, a.length, out.length);
+		IMPL.composeColor(r, g, b, a, out, offset, offset + length);
+	}
+
+	/**
+	 * Re-maps each value from one range to another, as
+	 * <code>map(value, min1, max1, min2, max2)</code>.
+	 */
+	public static void map(float[] values, float min1, float max1, float min2, float max2, float[] out, int offset, int length) {
+		checkRange(offset, length, values.length, out.length);
+		IMPL.map(values, min1, max1, min2, max2, out, offset, offset + length);
+	}
+
+	/**
+	 * Computes the distance from each <code>(x[i], y[i])</code> to the point
+	 * <code>(px, py)</code>, as <code>distance()</code>.
+	 */
+	public static void distance(float[] x, float[] y, float px, float py, float[] out, int offset, int length) {
+		checkRange(offset, length, x.length, y.length, out.length);
+		IMPL.distance(x, y, px, py, out, offset, offset + length);
+	}
+
+	/**
+	 * @return whether these methods are running on the Vector API (rather than
+	 *         the scalar fallback)
+	 */
+	public static boolean isVectorized() {
+		return IMPL.isVectorized();
+	}
+
+	private static ScalarRowOps load() {
+		if (Boolean.parseBoolean(System.getProperty("paparapi.vector", "true"))) {
+			try {
+				// only present in META-INF/versions/17 of the multi-release jar
+				return (ScalarRowOps) Class.forName("micycle.paparapi.VectorRowOps").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// older JVM, or jdk.incubator.vector not added to the module graph
+			}
+		}
+		return new ScalarRowOps();
+	}
+
+	private static void checkRange(int offset, int length, int... arrayLengths) {
+		for (int arrayLength : arrayLengths) {
+			if (offset < 0 || length < 0 || offset + length > arrayLength || offset + length < 0) {
+				throw new ArrayIndexOutOfBoundsException(
+						"Range [" + offset + ", " + offset + " + " + length + ") out of bounds for length " + arrayLength);
+			}
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package micycle.paparapi;
+
+/**
+ * The scalar implementation behind {@link RowOps}: a loop over the element-wise
+ * equivalents of PKernel's helpers, producing bit-identical results. On Java
+ * 17+ it is overridden by a vectorized subclass (found in the jar's
+ * <code>META-INF/versions/17</code>), which falls back to these methods for
+ * the elements left over after its last full vector.
+ *
+ * @author Michael Carleton
+ *
+ */
+class ScalarRowOps {
+
+	static final int PRIME_X = 501125321;
+	static final int PRIME_Y = 1136930381;
+	static final int PRIME_Z = 1720413743;
+	static final int HASH_MULTIPLIER = 0x27d4eb2d;
+	static final float NOISE_2D_SCALE = 1.4247691104677813f;
+	static final float NOISE_3D_SCALE = 0.964921414852142333984375f;
+
+	void noise(int seed, float[] x, float[] y, float[] out, int from, int to) {
+		for (int i = from; i < to; i++) {
+			out[i] = noise(seed, x[i], y[i]);
+		}
+	}
+
+	void noise(int seed, float[] x, float[] y, float[] z, float[] out, int from, int to) {
+		for (int i = from; i < to; i++) {
+			out[i] = noise(seed, x[i], y[i], z[i]);
+		}
+	}
+
+	/**
+	 * @param first index of the sample at <code>x0</code>; out[i] is sampled at
+	 *              <code>x0 + (i - first) * dx</code>
+	 */
+	void noiseRow(int seed, float x0, float dx, float y, float[] out, int first, int from, int to) {
+		for (int i = from; i < to; i++) {
+			out[i] = noise(seed, x0 + (i - first) * dx, y);
+		}
+	}
+
+	void noiseRow(int seed, float x0, float dx, float y, float z, float[] out, int first, int from, int to) {
+		for (int i = from; i < to; i++) {
+			out[i] = noise(seed, x0 + (i - first) * dx, y, z);
+		}
+	}
+
+	void composeColor(float[] r, float[] g, float[] b, float[] a, int[] out, int from, int to) {
+		for (int i = from; i < to; i++) {
+			out[i] = (int) (a[i] * 255) << 24 | ((int) (r[i] * 255) << 16 | (int) (g[i] * 255) << 8 | (int) (b[i] * 255));
+		}
+	}
+
+	void map(float[] values, float min1, float max1, float min2, float max2, float[] out, int from, int to) {
+		for (int i = from; i < to; i++) {
+			out[i] = min2 + (values[i] - min1) * (max2 - min2) / (max1 - min1);
+		}
+	}
+
+	void distance(float[] x, float[] y, float px, float py, float[] out, int from, int to) {
+		for (int i = from; i < to; i++) {
+			float deltaX = px - x[i];
+			float deltaY = py - y[i];
+			out[i] = (float) Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+		}
+	}
+
+	boolean isVectorized() {
+		return false;
+	}
+
+	// Perlin noise, exactly as PKernel computes it
+
+	static float noise(int seed, float x, float y) {
+		int x0 = fastFloor(x);
+		int y0 = fastFloor(y);
+
+		float xd0 = (x - x0);
+		float yd0 = (y - y0);
+		float xd1 = xd0 - 1;
+		float yd1 = yd0 - 1;
+
+		float xs = interpQuintic(xd0);
+		float ys = interpQuintic(yd0);
+
+		x0 *= PRIME_X;
+		y0 *= PRIME_Y;
+		int x1 = x0 + PRIME_X;
+		int y1 = y0 + PRIME_Y;
+
+		float xf0 = lerp(gradCoord(seed, x0, y0, xd0, yd0), gradCoord(seed, x1, y0, xd1, yd0), xs);
+		float xf1 = lerp(gradCoord(seed, x0, y1, xd0, yd1), gradCoord(seed, x1, y1, xd1, yd1), xs);
+
+		return lerp(xf0, xf1, ys) * NOISE_2D_SCALE;
+	}
+
+	static float noise(int seed, float x, float y, float z) {
+		int x0 = fastFloor(x);
+		int y0 = fastFloor(y);
+		int z0 = fastFloor(z);
+
+		float xd0 = (x - x0);
+		float yd0 = (y - y0);
+		float zd0 = (z - z0);
+		float xd1 = xd0 - 1;
+		float yd1 = yd0 - 1;
+		float zd1 = zd0 - 1;
+
+		float xs = interpQuintic(xd0);
+		float ys = interpQuintic(yd0);
+		float zs = interpQuintic(zd0);
+		x0 *= PRIME_X;
+		y0 *= PRIME_Y;
+		z0 *= PRIME_Z;
+		int x1 = x0 + PRIME_X;
+		int y1 = y0 + PRIME_Y;
+		int z1 = z0 + PRIME_Z;
+
+		float xf00 = lerp(gradCoord(seed, x0, y0, z0, xd0, yd0, zd0), gradCoord(seed, x1, y0, z0, xd1, yd0, zd0), xs);
+		float xf10 = lerp(gradCoord(seed, x0, y1, z0, xd0, yd1, zd0), gradCoord(seed, x1, y1, z0, xd1, yd1, zd0), xs);
+		float xf01 = lerp(gradCoord(seed, x0, y0, z1, xd0, yd0, zd1), gradCoord(seed, x1, y0, z1, xd1, yd0, zd1), xs);
+		float xf11 = lerp(gradCoord(seed, x0, y1, z1, xd0, yd1, zd1), gradCoord(seed, x1, y1, z1, xd1, yd1, zd1), xs);
+
+		float yf0 = lerp(xf00, xf10, ys);
+		float yf1 = lerp(xf01, xf11, ys);
+
+		return lerp(yf0, yf1, zs) * NOISE_3D_SCALE;
+	}
+
+	private static float gradCoord(int seed, int xPrimed, int yPrimed, float xd, float yd) {
+		int hash = (seed ^ xPrimed ^ yPrimed) * HASH_MULTIPLIER;
+		hash ^= hash >> 15;
+		hash &= 127 << 1;
+		return xd * NoiseTables.GRADIENTS_2D[hash] + yd * NoiseTables.GRADIENTS_2D[hash | 1];
+	}
+
+	private static float gradCoord(int seed, int xPrimed, int yPrimed, int zPrimed, float xd, float yd, float zd) {
+		int hash = (seed ^ xPrimed ^ yPrimed ^ zPrimed) * HASH_MULTIPLIER;
+		hash ^= hash >> 15;
+		hash &= 63 << 2;
+		return xd * NoiseTables.GRADIENTS_3D[hash] + yd * NoiseTables.GRADIENTS_3D[hash | 1] + zd * NoiseTables.GRADIENTS_3D[hash | 2];
+	}
+
+	private static float interpQuintic(float t) {
+		return t * t * t * (t * (t * 6 - 15) + 10);
+	}
+
+	private static int fastFloor(float f) {
+		return f >= 0 ? (int) f : (int) f - 1;
+	}
+
+	private static float lerp(float a, float b, float t) {
+		return a + t * (b - a);
+	}
+}
@@ -0,0 +1,76 @@
+package micycle.paparapi;
+
+/**
+ * Tables of the low-discrepancy sequences behind
+ * {@link PKernel#sobol(int, int, int) PKernel's sobol()} and
+ * {@link PKernel#halton(int, int, int) halton()}, which copies them into
+ * constant memory.
+ *
+ * @author Michael Carleton
+ *
+ */
+final class SequenceTables {
+
+	static final int SOBOL_DIMENSIONS = 16;
+	static final int SOBOL_BITS = 32;
+	static final int HALTON_DIMENSIONS = 16;
+
+	/**
+	 * Joe and Kuo's primitive polynomials and initial direction numbers
+	 * (<code>new-joe-kuo-6.21201</code>) for dimensions 2 to
+	 * {@link #SOBOL_DIMENSIONS}: degree s, coefficients a, then m<sub>1</sub>
+	 * to m<sub>s</sub>.
+	 */
+	private static final int[][] JOE_KUO = { //
+			{ 1, 0, 1 }, //
+			{ 2, 1, 1, 3 }, //
+			{ 3, 1, 1, 3, 1 }, //
+			{ 3, 2, 1, 1, 1 }, //
+			{ 4, 1, 1, 1, 3, 3 }, //
+			{ 4, 4, 1, 3, 5, 13 }, //
+			{ 5, 2, 1, 1, 5, 5, 17 }, //
+			{ 5, 4, 1, 1, 5, 5, 5 }, //
+			{ 5, 7, 1, 1, 7, 11, 19 }, //
+			{ 5, 11, 1, 1, 5, 1, 1 }, //
+			{ 5, 13, 1, 1, 1, 3, 11 }, //
+			{ 5, 14, 1, 3, 5, 5, 31 }, //
+			{ 6, 1, 1, 3, 3, 9, 7, 49 }, //
+			{ 6, 13, 1, 1, 1, 15, 21, 21 }, //
+			{ 6, 16, 1, 3, 1, 13, 27, 49 } };
+
+	/**
+	 * Sobol direction numbers, {@link #SOBOL_BITS} per dimension, most significant
+	 * bit first: <code>[dimension * 32 + bit]</code>.
+	 */
+	static final int[] SOBOL_DIRECTIONS = sobolDirections();
+
+	/** Halton bases: the first {@link #HALTON_DIMENSIONS} primes, one per dimension. */
+	static final int[] HALTON_PRIMES = { 2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53 };
+
+	private SequenceTables() {
+	}
+
+	private static int[] sobolDirections() {
+		final int[] v = new int[SOBOL_DIMENSIONS * SOBOL_BITS];
+		for (int k = 0; k < SOBOL_BITS; k++) {
+			v[k] = 1 << (31 - k); // the first dimension is van der Corput's sequence
+		}
+		for (int d = 1; d < SOBOL_DIMENSIONS; d++) {
+			final int[] p = JOE_KUO[d - 1];
+			final int s = p[0], a = p[1], o = d * SOBOL_BITS;
+			for (int k = 0; k < s; k++) {
+				v[o + k] = p[2 + k] << (31 - k);
+			}
+			for (int k = s; k < SOBOL_BITS; k++) {
+				int x = v[o + k - s] ^ (v[o + k - s] >>> s);
+				for (int j = 1; j < s; j++) {
+					if (((a >>> (s - 1 - j)) & 1) != 0) {
+						x ^= v[o + k - j];
+					}
+				}
+				v[o + k] = x;
+			}
+		}
+		return v;
+	}
+}
@@ -0,0 +1,279 @@
+package micycle.paparapi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.aparapi.Range;
+
+/**
+ * Renders an image far larger than a kernel's own pixels (e.g. a print of 20k
+ * to 60k pixels a side) by executing the kernel once per tile and streaming
+ * each finished tile into the file.
+ * <p>
+ * The kernel's <code>width x height</code> is the tile size. Before each tile
+ * the kernel's {@link PKernel#originX originX}/{@link PKernel#originY originY}
+ * are set to the tile's offset and its {@link PKernel#canvasWidth
+ * canvasWidth}/{@link PKernel#canvasHeight canvasHeight} to the full image
+ * size, so kernels that address pixels through {@link PKernel#pixelX()} and
+ * {@link PKernel#pixelY()} (and scale by the canvas size rather than
+ * <code>width</code>/<code>height</code>) render the same picture at any
+ * resolution. Tiles along the right and bottom edges execute over smaller
+ * ranges.
+ * <p>
+ * Output is 8-bit RGB (alpha is dropped), either {@link Format#RAW headerless}
+ * or as an uncompressed {@link Format#TIFF TIFF}. Memory use is bounded by the
+ * tile size: each tile row is written in place with a positional write from a
+ * single reused buffer, so the image itself lives only in the file (and the OS
+ * page cache). No memory mappings are created, so none linger after
+ * {@link #render(Path, Format) render()} returns.
+ *
+ * <pre>
+ * MyKernel kernel = new MyKernel(PixelTarget.of(new int[1024 * 1024], 1024, 1024));
+ * new TiledRenderer(kernel, 30000, 20000).render(Paths.get("poster.tif"), Format.TIFF);
+ * </pre>
+ *
+ * @author Michael Carleton
+ *
+ */
+public final class TiledRenderer {
+
+	/**
+	 * Output file formats. Both store 8-bit RGB samples, row-major, top row first.
+	 */
+	public enum Format {
+		/** Pixel data only, as read by e.g. ImageMagick's <code>rgb:</code> format. */
+		RAW,
+		/**
+		 * Baseline uncompressed TIFF; BigTIFF when the file would exceed 4 GB.
+		 */
+		TIFF
+	}
+
+	private static final int BYTES_PER_PIXEL = 3;
+	private static final int TIFF_STRIP_BYTES = 1 << 20; // target strip size
+
+	private final PKernel kernel;
+	private final int width, height;
+	private int dpi = 300;
+
+	/**
+	 * Creates a renderer of an image of the given size, tiled by the kernel's own
+	 * size.
+	 *
+	 * @param kernel the kernel, executed once per tile
+	 * @param width  width of the image, in pixels
+	 * @param height height of the image, in pixels
+	 */
+	public TiledRenderer(PKernel kernel, int width, int height) {
+		if (width < 1 || height < 1 || width > Integer.MAX_VALUE / BYTES_PER_PIXEL) {
+			throw new IllegalArgumentException("Unsupported image size " + width + "x" + height);
+		}
+		this.kernel = kernel;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Sets the resolution recorded in TIFF output (300 by default), which
+	 * determines the printed size.
+	 *
+	 * @param dpi dots per inch
+	 */
+	public void setDpi(int dpi) {
+		if (dpi < 1) {
+			throw new IllegalArgumentException("dpi must be positive");
+		}
+		this.dpi = dpi;
+	}
+
+	/**
+	 * Renders the image into the given file, replacing it if it exists.
+	 *
+	 * @param file   the output file
+	 * @param format the output format
+	 * @throws IOException if the file can't be written
+	 */
+	public void render(Path file, Format format) throws IOException {
+		final int tileWidth = kernel.width;
+		final int tileHeight = kernel.height;
+		final long rowBytes = (long) width * BYTES_PER_PIXEL;
+		final ByteBuffer header = format == Format.TIFF ? tiffHeader() : ByteBuffer.allocate(0);
+		final long dataOffset = header.remaining();
+		final ByteBuffer row = ByteBuffer.allocateDirect(tileWidth * BYTES_PER_PIXEL);
+		Range fullTile = null;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE)) {
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			for (int y0 = 0; y0 < height; y0 += tileHeight) {
+				final int h = Math.min(tileHeight, height - y0);
+				for (int x0 = 0; x0 < width; x0 += tileWidth) {
+					final int w = Math.min(tileWidth, width - x0);
+					kernel.setCanvasRegion(x0, y0, width, height);
+					if (w == tileWidth && h == tileHeight) {
+						if (fullTile == null) {
+							fullTile = Range.create2D(tileWidth, tileHeight);
+						}
+						kernel.execute(fullTile);
+					} else {
+						kernel.execute(Range.create2D(w, h));
+					}
+					final int[] pixels = kernel.getPixels();
+					for (int r = 0; r < h; r++) {
+						row.clear();
+						for (int i = r * tileWidth, end = i + w; i < end; i++) {
+							int argb = pixels[i];
+							row.put((byte) (argb >> 16)).put((byte) (argb >> 8)).put((byte) argb);
+						}
+						row.flip();
+						long position = dataOffset + (y0 + r) * rowBytes + (long) x0 * BYTES_PER_PIXEL;
+						while (row.hasRemaining()) {
+							position += channel.write(row, position);
+						}
+					}
+				}
+			}
+		} finally {
+			kernel.setCanvasRegion(0, 0, tileWidth, tileHeight);
+		}
+	}
+
+	/**
+	 * Builds the TIFF header and image file directory, which precede the pixel
+	 * data: a single RGB image in strips of about {@link #TIFF_STRIP_BYTES}.
+	 */
+	private ByteBuffer tiffHeader() {
+		final long rowBytes = (long) width * BYTES_PER_PIXEL;
+		final int rowsPerStrip = (int) Math.max(1, Math.min(height, TIFF_STRIP_BYTES / rowBytes));
+		final int strips = (height + rowsPerStrip - 1) / rowsPerStrip;
+
+		for (boolean big : new boolean[] { false, true }) {
+			final List<IfdEntry> entries = new ArrayList<>();
+			final long[] stripOffsets = new long[strips];
+			final long[] stripByteCounts = new long[strips];
+			entries.add(new IfdEntry(256, IfdEntry.LONG, width)); // ImageWidth
+			entries.add(new IfdEntry(257, IfdEntry.LONG, height)); // ImageLength
+			entries.add(new IfdEntry(258, IfdEntry.SHORT, 8, 8, 8)); // BitsPerSample
+			entries.add(new IfdEntry(259, IfdEntry.SHORT, 1)); // Compression: none
+			entries.add(new IfdEntry(262, IfdEntry.SHORT, 2)); // PhotometricInterpretation: RGB
+			entries.add(new IfdEntry(273, big ? IfdEntry.LONG8 : IfdEntry.LONG, stripOffsets)); // StripOffsets
+			entries.add(new IfdEntry(277, IfdEntry.SHORT, BYTES_PER_PIXEL)); // SamplesPerPixel
+			entries.add(new IfdEntry(278, IfdEntry.LONG, rowsPerStrip)); // RowsPerStrip
+			entries.add(new IfdEntry(279, IfdEntry.LONG, stripByteCounts)); // StripByteCounts
+			entries.add(new IfdEntry(282, IfdEntry.RATIONAL, dpi, 1)); // XResolution
+			entries.add(new IfdEntry(283, IfdEntry.RATIONAL, dpi, 1)); // YResolution
+			entries.add(new IfdEntry(284, IfdEntry.SHORT, 1)); // PlanarConfiguration: interleaved
+			entries.add(new IfdEntry(296, IfdEntry.SHORT, 2)); // ResolutionUnit: inch
+
+			final int inline = big ? 8 : 4; // bytes of value stored in the entry itself
+			final int ifdOffset = big ? 16 : 8;
+			final int ifdBytes = big ? 8 + entries.size() * 20 + 8 : 2 + entries.size() * 12 + 4;
+			long size = ifdOffset + ifdBytes;
+			for (IfdEntry e : entries) {
+				if (e.bytes() > inline) {
+					size += e.bytes(); // always even, keeping values word-aligned
+				}
+			}
+			final long dataOffset = size;
+			if (!big && dataOffset + rowBytes * height > 0xFFFFFFFFL) {
+				continue; // offsets don't fit 32 bits
+			}
+			for (int s = 0; s < strips; s++) {
+				int rows = Math.min(rowsPerStrip, height - s * rowsPerStrip);
+				stripOffsets[s] = dataOffset + s * rowsPerStrip * rowBytes;
+				stripByteCounts[s] = rows * rowBytes;
+			}
+
+			final ByteBuffer header = ByteBuffer.allocate((int) dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+			header.putShort((short) 0x4949); // "II"
+			if (big) {
+				header.putShort((short) 43).putShort((short) 8).putShort((short) 0).putLong(ifdOffset);
+				header.putLong(entries.size());
+			} else {
+				header.putShort((short) 42).putInt(ifdOffset);
+				header.putShort((short) entries.size());
+			}
+			int external = ifdOffset + ifdBytes; // values too large for their entry follow the IFD
+			for (IfdEntry e : entries) {
+				header.putShort((short) e.tag).putShort((short) e.type);
+				if (big) {
+					header.putLong(e.count());
+				} else {
+					header.putInt(e.count());
+				}
+				if (e.bytes() > inline) {
+					if (big) {
+						header.putLong(external);
+					} else {
+						header.putInt(external);
+					}
+					int position = header.position();
+					header.position(external);
+					e.putValues(header);
+					external = header.position();
+					header.position(position);
+				} else {
+					int position = header.position();
+					e.putValues(header);
+					header.position(position + inline);
+				}
+			}
+			if (big) {
+				header.putLong(0); // no next IFD
+			} else {
+				header.putInt(0);
+			}
+			header.clear();
+			return header;
+		}
+		throw new AssertionError(); // BigTIFF offsets always fit
+	}
+
+	/**
+	 * A TIFF image file directory entry.
+	 */
+	private static final class IfdEntry {
+
+		static final int SHORT = 3, LONG = 4, RATIONAL = 5, LONG8 = 16;
+
+		final int tag, type;
+		final long[] values; // numerator, denominator pairs for RATIONAL
+
+		IfdEntry(int tag, int type, long... values) {
+			this.tag = tag;
+			this.type = type;
+			this.values = values;
+		}
+
+		int count() {
+			return type == RATIONAL ? values.length / 2 : values.length;
+		}
+
+		int bytes() {
+			return values.length * (type == SHORT ? 2 : type == LONG8 ? 8 : 4);
+		}
+
+		void putValues(ByteBuffer buffer) {
+			for (long v : values) {
+				switch (type) {
+					case SHORT:
+						buffer.putShort((short) v);
+						break;
+					case LONG8:
+						buffer.putLong(v);
+						break;
+					default: // LONG, RATIONAL
+						buffer.putInt((int) v);
+				}
+			}
+		}
+	}
+}
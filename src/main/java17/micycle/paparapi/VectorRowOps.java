@@ -0,0 +1,210 @@
+package micycle.paparapi;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Vector API implementation behind {@link RowOps} (Java 17+, requires
+ * <code>--add-modules jdk.incubator.vector</code>). Every operation is the
+ * lane-wise image of its scalar counterpart in {@link ScalarRowOps}, evaluated
+ * in the same order, so results are bit-identical; elements after the last full
+ * vector are left to the scalar implementation. The gain is greatest for
+ * noise, whose gradient table lookups keep C2 from vectorizing the scalar loop.
+ *
+ * @author Michael Carleton
+ *
+ */
+final class VectorRowOps extends ScalarRowOps {
+
+	private static final VectorSpecies<Float> F = FloatVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> I = VectorSpecies.of(int.class, F.vectorShape());
+
+	VectorRowOps() {
+		if (F.length() < 2 || I.length() != F.length()) {
+			throw new UnsupportedOperationException("No usable vector shape"); // RowOps falls back to scalar
+		}
+	}
+
+	@Override
+	void noise(int seed, float[] x, float[] y, float[] out, int from, int to) {
+		int[] hashes = new int[I.length()];
+		int i = from;
+		for (int bound = from + F.loopBound(to - from); i < bound; i += F.length()) {
+			noise(seed, FloatVector.fromArray(F, x, i), FloatVector.fromArray(F, y, i), hashes).intoArray(out, i);
+		}
+		super.noise(seed, x, y, out, i, to);
+	}
+
+	@Override
+	void noise(int seed, float[] x, float[] y, float[] z, float[] out, int from, int to) {
+		int[] hashes = new int[I.length()];
+		int i = from;
+		for (int bound = from + F.loopBound(to - from); i < bound; i += F.length()) {
+			noise(seed, FloatVector.fromArray(F, x, i), FloatVector.fromArray(F, y, i), FloatVector.fromArray(F, z, i), hashes)
+					.intoArray(out, i);
+		}
+		super.noise(seed, x, y, z, out, i, to);
+	}
+
+	@Override
+	void noiseRow(int seed, float x0, float dx, float y, float[] out, int first, int from, int to) {
+		int[] hashes = new int[I.length()];
+		FloatVector yv = FloatVector.broadcast(F, y);
+		int i = from;
+		for (int bound = from + F.loopBound(to - from); i < bound; i += F.length()) {
+			noise(seed, rowX(x0, dx, i - first), yv, hashes).intoArray(out, i);
+		}
+		super.noiseRow(seed, x0, dx, y, out, first, i, to);
+	}
+
+	@Override
+	void noiseRow(int seed, float x0, float dx, float y, float z, float[] out, int first, int from, int to) {
+		int[] hashes = new int[I.length()];
+		FloatVector yv = FloatVector.broadcast(F, y);
+		FloatVector zv = FloatVector.broadcast(F, z);
+		int i = from;
+		for (int bound = from + F.loopBound(to - from); i < bound; i += F.length()) {
+			noise(seed, rowX(x0, dx, i - first), yv, zv, hashes).intoArray(out, i);
+		}
+		super.noiseRow(seed, x0, dx, y, z, out, first, i, to);
+	}
+
+	// composeColor() is left to the scalar loop, which C2 already vectorizes; JDK
+	// 17's lane-wise F2I conversion measured several times slower than it
+
+	@Override
+	void map(float[] values, float min1, float max1, float min2, float max2, float[] out, int from, int to) {
+		float range2 = max2 - min2;
+		float range1 = max1 - min1;
+		int i = from;
+		for (int bound = from + F.loopBound(to - from); i < bound; i += F.length()) {
+			FloatVector.fromArray(F, values, i).sub(min1).mul(range2).div(range1).add(min2).intoArray(out, i);
+		}
+		super.map(values, min1, max1, min2, max2, out, i, to);
+	}
+
+	@Override
+	void distance(float[] x, float[] y, float px, float py, float[] out, int from, int to) {
+		int i = from;
+		for (int bound = from + F.loopBound(to - from); i < bound; i += F.length()) {
+			FloatVector deltaX = FloatVector.broadcast(F, px).sub(FloatVector.fromArray(F, x, i));
+			FloatVector deltaY = FloatVector.broadcast(F, py).sub(FloatVector.fromArray(F, y, i));
+			deltaX.mul(deltaX).add(deltaY.mul(deltaY)).lanewise(VectorOperators.SQRT).intoArray(out, i);
+		}
+		super.distance(x, y, px, py, out, i, to);
+	}
+
+	@Override
+	boolean isVectorized() {
+		return true;
+	}
+
+	private static FloatVector rowX(float x0, float dx, int index) {
+		IntVector indices = IntVector.zero(I).addIndex(1).add(index);
+		return ((FloatVector) indices.convert(VectorOperators.I2F, 0)).mul(dx).add(x0);
+	}
+
+	// Perlin noise, lane-wise
+
+	private static FloatVector noise(int seed, FloatVector x, FloatVector y, int[] hashes) {
+		IntVector x0 = fastFloor(x);
+		IntVector y0 = fastFloor(y);
+
+		FloatVector xd0 = x.sub(toFloat(x0));
+		FloatVector yd0 = y.sub(toFloat(y0));
+		FloatVector xd1 = xd0.sub(1);
+		FloatVector yd1 = yd0.sub(1);
+
+		FloatVector xs = interpQuintic(xd0);
+		FloatVector ys = interpQuintic(yd0);
+
+		x0 = x0.mul(PRIME_X);
+		y0 = y0.mul(PRIME_Y);
+		IntVector x1 = x0.add(PRIME_X);
+		IntVector y1 = y0.add(PRIME_Y);
+
+		FloatVector xf0 = lerp(gradCoord(seed, x0, y0, xd0, yd0, hashes), gradCoord(seed, x1, y0, xd1, yd0, hashes), xs);
+		FloatVector xf1 = lerp(gradCoord(seed, x0, y1, xd0, yd1, hashes), gradCoord(seed, x1, y1, xd1, yd1, hashes), xs);
+
+		return lerp(xf0, xf1, ys).mul(NOISE_2D_SCALE);
+	}
+
+	private static FloatVector noise(int seed, FloatVector x, FloatVector y, FloatVector z, int[] hashes) {
+		IntVector x0 = fastFloor(x);
+		IntVector y0 = fastFloor(y);
+		IntVector z0 = fastFloor(z);
+
+		FloatVector xd0 = x.sub(toFloat(x0));
+		FloatVector yd0 = y.sub(toFloat(y0));
+		FloatVector zd0 = z.sub(toFloat(z0));
+		FloatVector xd1 = xd0.sub(1);
+		FloatVector yd1 = yd0.sub(1);
+		FloatVector zd1 = zd0.sub(1);
+
+		FloatVector xs = interpQuintic(xd0);
+		FloatVector ys = interpQuintic(yd0);
+		FloatVector zs = interpQuintic(zd0);
+		x0 = x0.mul(PRIME_X);
+		y0 = y0.mul(PRIME_Y);
+		z0 = z0.mul(PRIME_Z);
+		IntVector x1 = x0.add(PRIME_X);
+		IntVector y1 = y0.add(PRIME_Y);
+		IntVector z1 = z0.add(PRIME_Z);
+
+		FloatVector xf00 = lerp(gradCoord(seed, x0, y0, z0, xd0, yd0, zd0, hashes), gradCoord(seed, x1, y0, z0, xd1, yd0, zd0, hashes), xs);
+		FloatVector xf10 = lerp(gradCoord(seed, x0, y1, z0, xd0, yd1, zd0, hashes), gradCoord(seed, x1, y1, z0, xd1, yd1, zd0, hashes), xs);
+		FloatVector xf01 = lerp(gradCoord(seed, x0, y0, z1, xd0, yd0, zd1, hashes), gradCoord(seed, x1, y0, z1, xd1, yd0, zd1, hashes), xs);
+		FloatVector xf11 = lerp(gradCoord(seed, x0, y1, z1, xd0, yd1, zd1, hashes), gradCoord(seed, x1, y1, z1, xd1, yd1, zd1, hashes), xs);
+
+		FloatVector yf0 = lerp(xf00, xf10, ys);
+		FloatVector yf1 = lerp(xf01, xf11, ys);
+
+		return lerp(yf0, yf1, zs).mul(NOISE_3D_SCALE);
+	}
+
+	/**
+	 * @param hashes scratch array of one vector's length, for the gradient table
+	 *               gather
+	 */
+	private static FloatVector gradCoord(int seed, IntVector xPrimed, IntVector yPrimed, FloatVector xd, FloatVector yd, int[] hashes) {
+		IntVector hash = xPrimed.lanewise(VectorOperators.XOR, yPrimed).lanewise(VectorOperators.XOR, seed).mul(HASH_MULTIPLIER);
+		hash = hash.lanewise(VectorOperators.XOR, hash.lanewise(VectorOperators.ASHR, 15)).and(127 << 1);
+		hash.intoArray(hashes, 0);
+		FloatVector xg = FloatVector.fromArray(F, NoiseTables.GRADIENTS_2D, 0, hashes, 0);
+		FloatVector yg = FloatVector.fromArray(F, NoiseTables.GRADIENTS_2D, 1, hashes, 0); // [hash | 1], as hash is even
+		return xd.mul(xg).add(yd.mul(yg));
+	}
+
+	private static FloatVector gradCoord(int seed, IntVector xPrimed, IntVector yPrimed, IntVector zPrimed, FloatVector xd, FloatVector yd,
+			FloatVector zd, int[] hashes) {
+		IntVector hash = xPrimed.lanewise(VectorOperators.XOR, yPrimed).lanewise(VectorOperators.XOR, zPrimed)
+				.lanewise(VectorOperators.XOR, seed).mul(HASH_MULTIPLIER);
+		hash = hash.lanewise(VectorOperators.XOR, hash.lanewise(VectorOperators.ASHR, 15)).and(63 << 2);
+		hash.intoArray(hashes, 0);
+		FloatVector xg = FloatVector.fromArray(F, NoiseTables.GRADIENTS_3D, 0, hashes, 0);
+		FloatVector yg = FloatVector.fromArray(F, NoiseTables.GRADIENTS_3D, 1, hashes, 0); // hash is a multiple of 4
+		FloatVector zg = FloatVector.fromArray(F, NoiseTables.GRADIENTS_3D, 2, hashes, 0);
+		return xd.mul(xg).add(yd.mul(yg)).add(zd.mul(zg));
+	}
+
+	private static FloatVector interpQuintic(FloatVector t) {
+		return t.mul(t).mul(t).mul(t.mul(t.mul(6).sub(15)).add(10));
+	}
+
+	private static IntVector fastFloor(FloatVector f) {
+		IntVector truncated = (IntVector) f.convert(VectorOperators.F2I, 0);
+		VectorMask<Integer> belowZero = f.compare(VectorOperators.GE, 0).not().cast(I); // as f >= 0 ? .. : .., for NaN too
+		return truncated.sub(1, belowZero);
+	}
+
+	private static FloatVector toFloat(IntVector v) {
+		return (FloatVector) v.convert(VectorOperators.I2F, 0);
+	}
+
+	private static FloatVector lerp(FloatVector a, FloatVector b, FloatVector t) {
+		return a.add(t.mul(b.sub(a)));
+	}
+}